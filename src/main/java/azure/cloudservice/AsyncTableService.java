@@ -0,0 +1,69 @@
+package azure.cloudservice;
+
+import azure.component.BatchResult;
+import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+import azure.component.filter.Filter;
+import com.microsoft.azure.storage.table.EntityProperty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncTableService<T> {
+
+    CompletableFuture<Boolean> insertOrReplace(T entity);
+
+    CompletableFuture<Boolean> insertOrMerge(T entity);
+
+    CompletableFuture<BatchResult<T>> insertOrReplaceBatch(List<T> entities);
+
+    CompletableFuture<BatchResult<T>> insertOrMergeBatch(List<T> entities);
+
+    CompletableFuture<Integer> insert(T entity);
+
+    CompletableFuture<Integer> replace(T entity);
+
+    CompletableFuture<Integer> merge(T entity);
+
+    CompletableFuture<Integer> merge(String partitionKey, String rowKey, String etag, Map<String, EntityProperty> properties);
+
+    CompletableFuture<Integer> delete(String partitionKey, String rowKey, String etag);
+
+    CompletableFuture<T> delete(T entity);
+
+    CompletableFuture<T> getEntity(T entity);
+
+    CompletableFuture<T> getEntity(String partitionKey, String rowKey);
+
+    CompletableFuture<T> getEntity(String rowKey);
+
+    CompletableFuture<Map<EntityKey, T>> getEntities(Collection<EntityKey> keys);
+
+    CompletableFuture<List<T>> queryAll();
+
+    CompletableFuture<List<T>> query(String partitionKey, String azureFilter);
+
+    CompletableFuture<List<T>> query(String partitionKey, String azureFilter, String... columns);
+
+    CompletableFuture<List<T>> query(Filter filter);
+
+    CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter);
+
+    CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter, String... columns);
+
+    CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter);
+
+    CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter, String... columns);
+
+    CompletableFuture<List<T>> queryTop(int count, String partitionKey, String azureFilter);
+
+    CompletableFuture<List<T>> queryTop(int count, String partitionKey, String azureFilter, String... columns);
+
+    CompletableFuture<List<T>> queryTop(int count, String partitionKey, String azureFilter, String property, boolean descending);
+
+    CompletableFuture<Integer> count();
+
+    CompletableFuture<Integer> count(String partitionKey, String azureFilter);
+}
@@ -1,6 +1,57 @@
 package azure.cloudservice;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+
 public interface BlobService {
 
     String upload(String containerName, String blobName, byte[] data);
+
+    /**
+     * Upload the remaining content of a stream as blocks, several at a time.
+     * The stream is read to its end but not closed.
+     *
+     * @return blob URI, or null if the upload failed
+     */
+    String upload(String containerName, String blobName, InputStream data);
+
+    /**
+     * Upload the remaining content of a channel as blocks, several at a time.
+     * The channel is read to its end but not closed.
+     *
+     * @return blob URI, or null if the upload failed
+     */
+    String upload(String containerName, String blobName, ReadableByteChannel data);
+
+    /**
+     * Upload a file as blocks, several at a time.
+     *
+     * @return blob URI, or null if the upload failed
+     */
+    String upload(String containerName, String blobName, Path file);
+
+    /**
+     * Open a stream over the content of a blob, which is fetched as it is read.
+     *
+     * @return content stream to be closed by the caller, or null if the blob could not be opened
+     */
+    InputStream openDownload(String containerName, String blobName);
+
+    /**
+     * Write the content of a blob to a stream in order. The stream is not closed.
+     *
+     * @return number of bytes written, or -1 if the download failed
+     */
+    long download(String containerName, String blobName, OutputStream target);
+
+    /**
+     * Download a blob into a file with parallel ranged reads, replacing the file.
+     * A failure before the file is opened, e.g. a missing blob, leaves an existing
+     * file untouched; a failure while writing it deletes it.
+     *
+     * @return number of bytes written, or -1 if the download failed
+     */
+    long download(String containerName, String blobName, Path target);
 }
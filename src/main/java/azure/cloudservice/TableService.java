@@ -1,18 +1,37 @@
 package azure.cloudservice;
 
+import azure.component.BatchResult;
 import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+import azure.component.filter.Filter;
+import com.microsoft.azure.storage.table.EntityProperty;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface TableService<T> {
 
+    String getTableName();
+
     boolean insertOrReplace(T entity);
 
     boolean insertOrMerge(T entity);
 
-    boolean insertOrReplaceBatch(List<T> entities);
+    BatchResult<T> insertOrReplaceBatch(List<T> entities);
+
+    BatchResult<T> insertOrMergeBatch(List<T> entities);
+
+    int insert(T entity);
+
+    int replace(T entity);
+
+    int merge(T entity);
 
-    boolean insertOrMergeBatch(List<T> entities);
+    int merge(String partitionKey, String rowKey, String etag, Map<String, EntityProperty> properties);
+
+    int delete(String partitionKey, String rowKey, String etag);
 
     T delete(T entity);
 
@@ -22,13 +41,35 @@ public interface TableService<T> {
 
     T getEntity(String rowKey);
 
+    Map<EntityKey, T> getEntities(Collection<EntityKey> keys);
+
     List<T> queryAll();
 
     List<T> query(String partitionKey, String azureFilter);
 
+    List<T> query(String partitionKey, String azureFilter, String... columns);
+
+    Stream<T> queryStream(String partitionKey, String azureFilter);
+
+    List<T> query(Filter filter);
+
+    Stream<T> queryStream(Filter filter);
+
     BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter);
 
+    BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter, String... columns);
+
+    BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter);
+
+    BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter, String... columns);
+
     List<T> queryTop(int count, String partitionKey, String azureFilter);
 
+    List<T> queryTop(int count, String partitionKey, String azureFilter, String... columns);
+
+    List<T> queryTop(int count, String partitionKey, String azureFilter, String property, boolean descending);
+
     int count();
+
+    int count(String partitionKey, String azureFilter);
 }
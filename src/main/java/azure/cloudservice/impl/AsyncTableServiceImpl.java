@@ -0,0 +1,174 @@
+package azure.cloudservice.impl;
+
+import azure.cloudservice.AsyncTableService;
+import azure.cloudservice.TableService;
+import azure.component.BatchResult;
+import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+import azure.component.filter.Filter;
+import azure.component.util.ExecutorUtils;
+import com.microsoft.azure.storage.table.EntityProperty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls of a {@link TableService} on a bounded executor.
+ */
+public class AsyncTableServiceImpl<T> implements AsyncTableService<T> {
+
+    private final TableService<T> tableService;
+    private final Executor executor;
+
+    public AsyncTableServiceImpl(TableService<T> tableService) {
+        this(tableService, ExecutorUtils.asyncExecutor());
+    }
+
+    public AsyncTableServiceImpl(TableService<T> tableService, Executor executor) {
+        this.tableService = tableService;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> insertOrReplace(T entity) {
+        return async(() -> tableService.insertOrReplace(entity));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> insertOrMerge(T entity) {
+        return async(() -> tableService.insertOrMerge(entity));
+    }
+
+    @Override
+    public CompletableFuture<BatchResult<T>> insertOrReplaceBatch(List<T> entities) {
+        return async(() -> tableService.insertOrReplaceBatch(entities));
+    }
+
+    @Override
+    public CompletableFuture<BatchResult<T>> insertOrMergeBatch(List<T> entities) {
+        return async(() -> tableService.insertOrMergeBatch(entities));
+    }
+
+    @Override
+    public CompletableFuture<Integer> insert(T entity) {
+        return async(() -> tableService.insert(entity));
+    }
+
+    @Override
+    public CompletableFuture<Integer> replace(T entity) {
+        return async(() -> tableService.replace(entity));
+    }
+
+    @Override
+    public CompletableFuture<Integer> merge(T entity) {
+        return async(() -> tableService.merge(entity));
+    }
+
+    @Override
+    public CompletableFuture<Integer> merge(String partitionKey, String rowKey, String etag, Map<String, EntityProperty> properties) {
+        return async(() -> tableService.merge(partitionKey, rowKey, etag, properties));
+    }
+
+    @Override
+    public CompletableFuture<Integer> delete(String partitionKey, String rowKey, String etag) {
+        return async(() -> tableService.delete(partitionKey, rowKey, etag));
+    }
+
+    @Override
+    public CompletableFuture<T> delete(T entity) {
+        return async(() -> tableService.delete(entity));
+    }
+
+    @Override
+    public CompletableFuture<T> getEntity(T entity) {
+        return async(() -> tableService.getEntity(entity));
+    }
+
+    @Override
+    public CompletableFuture<T> getEntity(String partitionKey, String rowKey) {
+        return async(() -> tableService.getEntity(partitionKey, rowKey));
+    }
+
+    @Override
+    public CompletableFuture<T> getEntity(String rowKey) {
+        return async(() -> tableService.getEntity(rowKey));
+    }
+
+    @Override
+    public CompletableFuture<Map<EntityKey, T>> getEntities(Collection<EntityKey> keys) {
+        return async(() -> tableService.getEntities(keys));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> queryAll() {
+        return async(tableService::queryAll);
+    }
+
+    @Override
+    public CompletableFuture<List<T>> query(String partitionKey, String azureFilter) {
+        return async(() -> tableService.query(partitionKey, azureFilter));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> query(String partitionKey, String azureFilter, String... columns) {
+        return async(() -> tableService.query(partitionKey, azureFilter, columns));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> query(Filter filter) {
+        return async(() -> tableService.query(filter));
+    }
+
+    @Override
+    public CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter) {
+        return async(() -> tableService.queryPage(rowCount, currentPage, partitionKey, azureFilter));
+    }
+
+    @Override
+    public CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter, String... columns) {
+        return async(() -> tableService.queryPage(rowCount, currentPage, partitionKey, azureFilter, columns));
+    }
+
+    @Override
+    public CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter) {
+        return async(() -> tableService.queryPage(rowCount, cursor, partitionKey, azureFilter));
+    }
+
+    @Override
+    public CompletableFuture<BootgridResponse<T>> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter, String... columns) {
+        return async(() -> tableService.queryPage(rowCount, cursor, partitionKey, azureFilter, columns));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> queryTop(int count, String partitionKey, String azureFilter) {
+        return async(() -> tableService.queryTop(count, partitionKey, azureFilter));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> queryTop(int count, String partitionKey, String azureFilter, String... columns) {
+        return async(() -> tableService.queryTop(count, partitionKey, azureFilter, columns));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> queryTop(int count, String partitionKey, String azureFilter, String property, boolean descending) {
+        return async(() -> tableService.queryTop(count, partitionKey, azureFilter, property, descending));
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        return async(tableService::count);
+    }
+
+    @Override
+    public CompletableFuture<Integer> count(String partitionKey, String azureFilter) {
+        return async(() -> tableService.count(partitionKey, azureFilter));
+    }
+
+    private <R> CompletableFuture<R> async(Supplier<R> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+}
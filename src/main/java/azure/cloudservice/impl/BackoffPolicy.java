@@ -0,0 +1,87 @@
+package azure.cloudservice.impl;
+
+import com.microsoft.azure.storage.StorageErrorCodeStrings;
+import com.microsoft.azure.storage.StorageException;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static azure.component.constant.Constants.*;
+
+/**
+ * When and how long to wait before retrying a failed storage call.
+ *
+ * Timeouts, throttling (ServerBusy) and server errors are retried, as are calls that
+ * got no response at all. The wait grows exponentially with full jitter, so that
+ * clients throttled together do not retry together, unless the service asked
+ * for a delay with a Retry-After header.
+ */
+public class BackoffPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts     maximum number of calls, the first one included
+     * @param baseDelayMillis upper bound of the first wait
+     * @param maxDelayMillis  upper bound of any wait
+     */
+    public BackoffPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public static BackoffPolicy defaultPolicy() {
+        return new BackoffPolicy(RETRY_MAX_ATTEMPTS, RETRY_BASE_DELAY_MILLIS, RETRY_MAX_DELAY_MILLIS);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isRetryable(StorageException e) {
+        int status = e.getHttpStatusCode();
+        if (status <= 0 || status == HttpURLConnection.HTTP_CLIENT_TIMEOUT) {
+            // No response, or the request did not complete in time
+            return true;
+        }
+        if (StorageErrorCodeStrings.SERVER_BUSY.equals(e.getErrorCode())
+                || StorageErrorCodeStrings.OPERATION_TIMED_OUT.equals(e.getErrorCode())) {
+            return true;
+        }
+        return status >= HttpURLConnection.HTTP_INTERNAL_ERROR && status != HttpURLConnection.HTTP_NOT_IMPLEMENTED
+                && status != HttpURLConnection.HTTP_VERSION;
+    }
+
+    /**
+     * Whether a failed call has certainly not been applied, so that it can be retried
+     * even if repeating it would fail, e.g. an insert or a delete. Timeouts, server
+     * errors and calls without response may have been applied before failing.
+     */
+    public boolean isRejected(StorageException e) {
+        return e.getHttpStatusCode() == HttpURLConnection.HTTP_UNAVAILABLE
+                && StorageErrorCodeStrings.SERVER_BUSY.equals(e.getErrorCode());
+    }
+
+    /**
+     * @param attempt    number of failed calls so far
+     * @param retryAfter Retry-After header of the failed response, may be null
+     * @return milliseconds to wait before the next call
+     */
+    public long delayMillis(int attempt, String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(Long.parseLong(retryAfter.trim()) * 1000, maxDelayMillis);
+            } catch (NumberFormatException ignored) {
+                // HTTP dates are not used by the storage service
+            }
+        }
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
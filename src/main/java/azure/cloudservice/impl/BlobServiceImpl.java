@@ -1,78 +1,404 @@
 package azure.cloudservice.impl;
 
 import azure.cloudservice.BlobService;
-import com.microsoft.azure.storage.CloudStorageAccount;
-import com.microsoft.azure.storage.OperationContext;
+import azure.component.instrumentation.Instrumentation;
+import azure.component.instrumentation.OperationRecorder;
+import azure.component.util.ExecutorUtils;
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.StorageErrorCodeStrings;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static azure.component.constant.Constants.AZURE_ACC_KEY;
-import static azure.component.constant.Constants.AZURE_ACC_NAME;
+import static azure.component.constant.Constants.AZURE_BLOB_CONTAINERS;
+import static azure.component.constant.Constants.BLOB_BLOCK_SIZE;
+import static azure.component.constant.Constants.BLOB_TRANSFER_PARALLELISM;
 
 public class BlobServiceImpl implements BlobService {
 
     private CloudBlobClient blobClient;
+    private Instrumentation instrumentation = Instrumentation.noop();
 
-    public BlobServiceImpl() {
-        setCloudTable();
-    }
+    private int blockSize = BLOB_BLOCK_SIZE;
+    private int parallelism = BLOB_TRANSFER_PARALLELISM;
+    private Executor transferExecutor = ExecutorUtils.defaultExecutor();
+    private BlobContainerPublicAccessType containerAccess = BlobContainerPublicAccessType.CONTAINER;
 
-    private void setCloudTable() {
-        String name = System.getenv(AZURE_ACC_NAME);
-        String key = System.getenv(AZURE_ACC_KEY);
+    public BlobServiceImpl() {
+        setBlobClient();
 
-        String storageConnectionString =
-                "DefaultEndpointsProtocol=https;" +
-                        "AccountName=" + name + ";" +
-                        "AccountKey=" + key + ";" +
-                        "TableEndpoint=https://" + name + ".table.core.windows.net;";
+        String containerNames = System.getenv(AZURE_BLOB_CONTAINERS);
+        if (containerNames != null) {
+            prewarm(containerNames.split(","));
+        }
+    }
 
+    private void setBlobClient() {
         try {
-            // Retrieve storage account from connection-string.
-            CloudStorageAccount storageAccount = CloudStorageAccount.parse(storageConnectionString);
-
-            // Create the blob client.
-            blobClient = storageAccount.createCloudBlobClient();
-        } catch (URISyntaxException | InvalidKeyException e) {
+            // Shared blob client of the account.
+            blobClient = CloudClientFactory.getBlobClient();
+        } catch (IllegalStateException e) {
             e.printStackTrace();
         }
     }
 
-    private CloudBlobContainer getBlobContainer(String containerName) {
-        try {
-            CloudBlobContainer container = blobClient.getContainerReference(containerName);
+    /**
+     * Record the operations of this service.
+     *
+     * @param instrumentation instrumentation, or null for none
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation != null ? instrumentation : Instrumentation.noop();
+    }
 
-            // Create the container if it does not exist with public access.
-            container.createIfNotExists(BlobContainerPublicAccessType.CONTAINER, new BlobRequestOptions(), new OperationContext());
+    /**
+     * Configure block transfers. At most parallelism blocks of blockSize bytes
+     * are in flight, and held in memory, per upload or download.
+     *
+     * @param blockSize   bytes per block or ranged read, at most 100 MB
+     * @param parallelism blocks transferred at the same time
+     */
+    public void setTransfers(int blockSize, int parallelism) {
+        if (blockSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Block size and parallelism must be positive");
+        }
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
 
-            return container;
-        } catch (URISyntaxException | StorageException e) {
-            return null;
+    /**
+     * Run block transfers on the given executor instead of the shared default one.
+     */
+    public void setTransferExecutor(Executor transferExecutor) {
+        this.transferExecutor = transferExecutor != null ? transferExecutor : ExecutorUtils.defaultExecutor();
+    }
+
+    /**
+     * Set the public access of the containers created from now on, which is
+     * CONTAINER by default. Containers that already exist keep their access.
+     */
+    public void setContainerAccess(BlobContainerPublicAccessType containerAccess) {
+        this.containerAccess = containerAccess;
+    }
+
+    /**
+     * Check/create the given containers now rather than on their first upload.
+     */
+    public void prewarm(String... containerNames) {
+        for (String containerName : containerNames) {
+            if (!containerName.trim().isEmpty()) {
+                CloudClientFactory.getBlobContainer(containerName.trim(), containerAccess);
+            }
         }
     }
 
+    @Override
     public String upload(String containerName, String blobName, byte[] data) {
-        CloudBlobContainer container = getBlobContainer(containerName);
+        try (OperationRecorder recorder = instrumentation.start(containerName, "upload", null)) {
+            return withContainer(containerName, recorder, true, container -> {
+                CloudBlockBlob blob = container.getBlockBlobReference(blobName);
+
+                InputStream inputStream = new ByteArrayInputStream(data);
+                blob.upload(inputStream, inputStream.available(), null, null, StorageContexts.recording(recorder, null));
+                recorder.bytesSent(data.length);
+
+                return blob.getUri().toString();
+            });
+        }
+    }
 
-        if (container != null) {
+    @Override
+    public String upload(String containerName, String blobName, InputStream data) {
+        return upload(containerName, blobName, Channels.newChannel(data));
+    }
+
+    @Override
+    public String upload(String containerName, String blobName, Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return upload(containerName, blobName, channel);
+        } catch (IOException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String upload(String containerName, String blobName, ReadableByteChannel data) {
+        try (OperationRecorder recorder = instrumentation.start(containerName, "uploadBlocks", null)) {
+            byte[] first = new byte[blockSize];
+            int firstLength;
             try {
+                firstLength = fill(data, first);
+            } catch (IOException e) {
+                recorder.error(e);
+                e.printStackTrace();
+                return null;
+            }
+
+            // Only a blob put in a single request still has its content at hand for a retry
+            boolean singleRequest = firstLength < first.length;
+            return withContainer(containerName, recorder, singleRequest, container -> {
                 CloudBlockBlob blob = container.getBlockBlobReference(blobName);
 
-                InputStream inputStream = new ByteArrayInputStream(data);
-                blob.upload(inputStream, inputStream.available());
+                if (singleRequest) {
+                    blob.uploadFromByteArray(first, 0, firstLength, null, null, StorageContexts.recording(recorder, null));
+                    recorder.bytesSent(firstLength);
+                } else {
+                    blob.commitBlockList(putBlocks(blob, data, first, recorder), null, null, StorageContexts.recording(recorder, null));
+                }
 
                 return blob.getUri().toString();
-            } catch (URISyntaxException | StorageException | IOException e) {
+            });
+        }
+    }
+
+    /**
+     * Put the content of the channel as consecutive blocks, starting with the given full buffer.
+     * Buffers are reused once their block is put, so at most parallelism of them exist.
+     *
+     * @return block list in content order
+     */
+    private List<BlockEntry> putBlocks(CloudBlockBlob blob, ReadableByteChannel data, byte[] first, OperationRecorder recorder)
+            throws IOException, InterruptedException {
+        List<BlockEntry> blocks = new ArrayList<>();
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(parallelism);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int allocated = 1;
+
+        byte[] buffer = first;
+        int length = first.length;
+        while (length > 0 && failure.get() == null) {
+            String blockId = blockId(blocks.size());
+            blocks.add(new BlockEntry(blockId));
+
+            byte[] block = buffer;
+            int blockLength = length;
+            puts.add(CompletableFuture.runAsync(() -> {
+                try {
+                    blob.uploadBlock(blockId, new ByteArrayInputStream(block, 0, blockLength), blockLength,
+                            null, null, StorageContexts.recording(recorder, null));
+                    recorder.bytesSent(blockLength);
+                } catch (StorageException | IOException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    freeBuffers.offer(block);
+                }
+            }, transferExecutor));
+
+            // Wait for a free buffer once parallelism blocks are in flight
+            buffer = freeBuffers.poll();
+            if (buffer == null) {
+                if (allocated < parallelism) {
+                    buffer = new byte[first.length];
+                    allocated++;
+                } else {
+                    buffer = freeBuffers.take();
+                }
+            }
+            length = fill(data, buffer);
+        }
+
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])).join();
+        if (failure.get() != null) {
+            throw new CompletionException(failure.get());
+        }
+        return blocks;
+    }
+
+    @Override
+    public InputStream openDownload(String containerName, String blobName) {
+        try (OperationRecorder recorder = instrumentation.start(containerName, "openDownload", null)) {
+            try {
+                CloudBlockBlob blob = blobClient.getContainerReference(containerName).getBlockBlobReference(blobName);
+                blob.setStreamMinimumReadSizeInBytes(blockSize);
+
+                return blob.openInputStream(null, null, StorageContexts.recording(recorder, null));
+            } catch (URISyntaxException | StorageException e) {
+                recorder.error(e);
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public long download(String containerName, String blobName, OutputStream target) {
+        try (OperationRecorder recorder = instrumentation.start(containerName, "download", null)) {
+            try {
+                CloudBlockBlob blob = blobClient.getContainerReference(containerName).getBlockBlobReference(blobName);
+                blob.download(target, null, null, StorageContexts.recording(recorder, null));
+
+                return blob.getProperties().getLength();
+            } catch (URISyntaxException | StorageException e) {
+                recorder.error(e);
+                e.printStackTrace();
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public long download(String containerName, String blobName, Path target) {
+        try (OperationRecorder recorder = instrumentation.start(containerName, "downloadRanges", null)) {
+            // Only a file created or truncated by this call may be deleted on failure
+            boolean opened = false;
+            try {
+                CloudBlockBlob blob = blobClient.getContainerReference(containerName).getBlockBlobReference(blobName);
+                blob.downloadAttributes(null, null, StorageContexts.recording(recorder, null));
+                long length = blob.getProperties().getLength();
+
+                // Every range must come from the same version of the blob
+                AccessCondition sameVersion = AccessCondition.generateIfMatchCondition(blob.getProperties().getEtag());
+
+                try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    opened = true;
+                    readRanges(blob, length, sameVersion, channel, recorder);
+                }
+
+                return length;
+            } catch (URISyntaxException | StorageException | IOException | RuntimeException e) {
+                recorder.error(e);
+                e.printStackTrace();
+                if (opened) {
+                    deletePartialFile(target);
+                }
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Read the blob in ranges of blockSize with up to parallelism workers, each
+     * taking the next unread range and writing it at its offset in the file.
+     */
+    private void readRanges(CloudBlockBlob blob, long length, AccessCondition sameVersion, FileChannel channel, OperationRecorder recorder) {
+        AtomicLong nextOffset = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long rangeCount = (length + blockSize - 1) / blockSize;
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, rangeCount); i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                byte[] buffer = new byte[blockSize];
+                long offset;
+                while (failure.get() == null && (offset = nextOffset.getAndAdd(blockSize)) < length) {
+                    try {
+                        long rangeLength = Math.min(blockSize, length - offset);
+                        int read = blob.downloadRangeToByteArray(offset, rangeLength, buffer, 0,
+                                sameVersion, null, StorageContexts.recording(recorder, null));
+
+                        ByteBuffer range = ByteBuffer.wrap(buffer, 0, read);
+                        while (range.hasRemaining()) {
+                            channel.write(range, offset + range.position());
+                        }
+                    } catch (StorageException | IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, transferExecutor));
+        }
+
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+        if (failure.get() != null) {
+            throw new CompletionException(failure.get());
+        }
+    }
+
+    /**
+     * Run a call against a container, taken from the containers known to exist.
+     * A container deleted since it was cached is forgotten, so that the next
+     * reference creates it again, and a retryable call is then made once more.
+     *
+     * @return result of the call, or null if it failed
+     */
+    private <R> R withContainer(String containerName, OperationRecorder recorder, boolean retryable, ContainerCall<R> call) {
+        for (int attempt = 0; ; attempt++) {
+            CloudBlobContainer container = CloudClientFactory.getBlobContainer(containerName, containerAccess);
+            if (container == null) {
+                return null;
+            }
+
+            try {
+                return call.apply(container);
+            } catch (Exception e) {
+                if (isContainerMissing(e)) {
+                    CloudClientFactory.forgetBlobContainer(container);
+                    if (retryable && attempt == 0) {
+                        continue;
+                    }
+                }
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                recorder.error(e);
                 e.printStackTrace();
+                return null;
             }
         }
+    }
 
-        return null;
+    private static boolean isContainerMissing(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof StorageException
+                && StorageErrorCodeStrings.CONTAINER_NOT_FOUND.equals(((StorageException) cause).getErrorCode());
+    }
+
+    /**
+     * Read from the channel until the buffer is full or the channel ends.
+     *
+     * @return number of bytes read, less than the buffer size only at the end of the channel
+     */
+    private static int fill(ReadableByteChannel channel, byte[] buffer) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        while (target.hasRemaining() && channel.read(target) >= 0) {
+            // Keep reading
+        }
+        return target.position();
+    }
+
+    /**
+     * Block ids must have the same length within a blob.
+     */
+    private static String blockId(int index) {
+        return Base64.getEncoder().encodeToString(String.format("%08d", index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private interface ContainerCall<R> {
+        R apply(CloudBlobContainer container) throws Exception;
+    }
+
+    private static void deletePartialFile(Path target) {
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,356 @@
+package azure.cloudservice.impl;
+
+import azure.cloudservice.TableService;
+import azure.component.BatchResult;
+import azure.component.EntityKey;
+import azure.component.GenericEntity;
+import azure.component.util.EntityUtils;
+import azure.component.util.ExecutorUtils;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.table.EntityProperty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static azure.component.constant.Constants.MAX_BATCH_SIZE;
+import static azure.component.constant.Constants.RESPONSE_CODE.INTERNAL_SERVER_ERROR;
+
+/**
+ * Write-behind buffer turning many single-entity upserts into few batch writes.
+ *
+ * Writes to the same PartitionKey/RowKey are coalesced while pending: a replace
+ * supersedes what was pending, a merge is applied on top of it. Pending writes are
+ * sent as per-partition batches of up to {@code MAX_BATCH_SIZE} operations when a
+ * partition fills a batch, when its oldest write reaches the maximum age, or on
+ * {@link #flush()}. Flushes run one at a time, so writes reach the table in order.
+ *
+ * Entities are copied when they are queued, so callers may keep modifying their
+ * instances; the failure handler receives the queued copies.
+ *
+ * Memory is bounded: writers block while maxPending entities are pending or being
+ * written. {@link #close()} stops accepting writes and drains the buffer.
+ *
+ * The writer goes straight to the table service, so the index tables of a
+ * repository are not updated for entities written through it.
+ */
+public class BufferedTableWriter<T extends GenericEntity<?>> implements AutoCloseable {
+
+    private final TableService<T> tableService;
+    private final int maxPending;
+    private final long maxAgeMillis;
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // Guarded by lock
+    private final LinkedHashMap<String, Partition<T>> partitions = new LinkedHashMap<>();
+    private int pendingCount;
+    private int inFlightCount;
+    private boolean flushScheduled;
+    private boolean closed;
+
+    private volatile Consumer<BatchResult.EntityResult<T>> failureHandler = failure -> {
+        if (failure.getError() != null) {
+            // Output the stack trace.
+            failure.getError().printStackTrace();
+        }
+    };
+
+    /**
+     * @param tableService table service to write to
+     * @param maxPending   maximum number of entities pending or being written, raised to
+     *                     {@code MAX_BATCH_SIZE} if lower so that a partition can fill a batch
+     * @param maxAgeMillis maximum time a write stays pending
+     */
+    public BufferedTableWriter(TableService<T> tableService, int maxPending, long maxAgeMillis) {
+        this.tableService = tableService;
+        this.maxPending = Math.max(maxPending, MAX_BATCH_SIZE);
+        this.maxAgeMillis = maxAgeMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(ExecutorUtils.daemonThreadFactory("azure-table-writer"));
+
+        long period = Math.max(maxAgeMillis / 2, 1);
+        flusher.scheduleWithFixedDelay(this::flushAged, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the handler of entities that could not be written, which prints their error by default.
+     */
+    public void setFailureHandler(Consumer<BatchResult.EntityResult<T>> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Drain the buffer when the JVM shuts down.
+     */
+    public void registerShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "azure-table-writer-drain"));
+    }
+
+    /**
+     * Queue an insert-or-replace of the entity.
+     *
+     * @throws IllegalStateException if the writer is closed
+     */
+    public void insertOrReplace(T entity) throws InterruptedException {
+        write(entity, false);
+    }
+
+    /**
+     * Queue an insert-or-merge of the entity.
+     *
+     * @throws IllegalStateException if the writer is closed
+     */
+    public void insertOrMerge(T entity) throws InterruptedException {
+        write(entity, true);
+    }
+
+    /**
+     * @return number of entities waiting to be written
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(T entity, boolean merge) throws InterruptedException {
+        EntityKey key = new EntityKey(entity.getPartitionKey(), entity.getRowKey());
+        T queued = EntityUtils.copy(entity);
+        if (queued == null) {
+            throw new IllegalStateException("Cannot copy entity of " + entity.getClass().getName());
+        }
+
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("BufferedTableWriter is closed");
+                }
+
+                Partition<T> partition = partitions.get(key.getPartitionKey());
+                Pending<T> pending = partition != null ? partition.writes.get(key) : null;
+                if (pending != null) {
+                    partition.writes.put(key, pending.coalesce(queued, merge));
+                    return;
+                }
+
+                if (pendingCount + inFlightCount < maxPending) {
+                    break;
+                }
+
+                // Make room instead of waiting for the writes to age
+                scheduleFlush();
+                notFull.await();
+            }
+
+            Partition<T> partition = partitions.computeIfAbsent(key.getPartitionKey(), pk -> new Partition<>());
+            partition.writes.put(key, new Pending<>(queued, merge));
+            pendingCount++;
+
+            if (partition.writes.size() >= MAX_BATCH_SIZE) {
+                scheduleFlush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with lock held
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.execute(() -> {
+                lock.lock();
+                try {
+                    flushScheduled = false;
+                } finally {
+                    lock.unlock();
+                }
+                // A blocked writer needs everything written, otherwise full batches are enough
+                flush(partition -> partition.writes.size() >= MAX_BATCH_SIZE || pendingCount + inFlightCount >= maxPending);
+            });
+        }
+    }
+
+    private void flushAged() {
+        // An exception would cancel the periodic flush
+        try {
+            long oldest = System.currentTimeMillis() - maxAgeMillis;
+            flush(partition -> partition.createdAt <= oldest);
+        } catch (RuntimeException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write every pending entity and wait until they are written.
+     */
+    public void flush() {
+        flush(partition -> true);
+    }
+
+    private void flush(Predicate<Partition<T>> selected) {
+        flushLock.lock();
+        try {
+            List<T> replaces = new ArrayList<>();
+            List<T> merges = new ArrayList<>();
+
+            lock.lock();
+            try {
+                Iterator<Partition<T>> iterator = partitions.values().iterator();
+                while (iterator.hasNext()) {
+                    Partition<T> partition = iterator.next();
+                    if (!selected.test(partition)) {
+                        continue;
+                    }
+                    iterator.remove();
+                    for (Pending<T> pending : partition.writes.values()) {
+                        (pending.merge ? merges : replaces).add(pending.entity);
+                    }
+                }
+                int taken = replaces.size() + merges.size();
+                pendingCount -= taken;
+                inFlightCount += taken;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (!replaces.isEmpty()) {
+                    write(replaces, tableService::insertOrReplaceBatch);
+                }
+                if (!merges.isEmpty()) {
+                    write(merges, tableService::insertOrMergeBatch);
+                }
+            } finally {
+                lock.lock();
+                try {
+                    inFlightCount -= replaces.size() + merges.size();
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<T> entities, Function<List<T>, BatchResult<T>> batchWrite) {
+        BatchResult<T> result;
+        try {
+            result = batchWrite.apply(entities);
+        } catch (RuntimeException e) {
+            // Whether any of them has been written is unknown
+            result = new BatchResult<>();
+            for (T entity : entities) {
+                result.add(entity, INTERNAL_SERVER_ERROR, e);
+            }
+        }
+        report(result);
+    }
+
+    private void report(BatchResult<T> result) {
+        Consumer<BatchResult.EntityResult<T>> handler = failureHandler;
+        for (BatchResult.EntityResult<T> entityResult : result.getResults()) {
+            if (!entityResult.isSuccess()) {
+                try {
+                    handler.accept(entityResult);
+                } catch (RuntimeException e) {
+                    // Output the stack trace.
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting writes, write every pending entity and stop the background flusher.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        flush();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Partition<T extends GenericEntity<?>> {
+        private final LinkedHashMap<EntityKey, Pending<T>> writes = new LinkedHashMap<>();
+        private final long createdAt = System.currentTimeMillis();
+    }
+
+    private static final class Pending<T extends GenericEntity<?>> {
+        private final T entity;
+        private final boolean merge;
+
+        Pending(T entity, boolean merge) {
+            this.entity = entity;
+            this.merge = merge;
+        }
+
+        /**
+         * Combine a later write of the same entity with this one.
+         */
+        Pending<T> coalesce(T later, boolean laterMerge) {
+            if (!laterMerge) {
+                // Last writer wins
+                return new Pending<>(later, false);
+            }
+            // A merge keeps the mode of what it is applied on
+            return new Pending<>(overlay(entity, later), merge);
+        }
+
+        /**
+         * @return copy of the earlier entity with the set properties of the later one
+         */
+        private static <T extends GenericEntity<?>> T overlay(T earlier, T later) {
+            try {
+                OperationContext context = new OperationContext();
+                HashMap<String, EntityProperty> properties = new HashMap<>(earlier.writeEntity(context));
+                HashMap<String, EntityProperty> laterProperties = later.writeEntity(context);
+                for (Map.Entry<String, EntityProperty> property : laterProperties.entrySet()) {
+                    if (property.getValue() != null && !property.getValue().getIsNull()) {
+                        properties.put(property.getKey(), property.getValue());
+                    }
+                }
+
+                return EntityUtils.copy(later, properties, context);
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot merge writes of " + later.getClass().getName(), e);
+            }
+        }
+    }
+}
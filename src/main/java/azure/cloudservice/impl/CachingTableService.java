@@ -0,0 +1,363 @@
+package azure.cloudservice.impl;
+
+import azure.cloudservice.TableService;
+import azure.component.BatchResult;
+import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+import azure.component.GenericEntity;
+import azure.component.cache.EntityCache;
+import azure.component.filter.Filter;
+import azure.component.instrumentation.Instrumentation;
+import azure.component.util.EntityUtils;
+import com.microsoft.azure.storage.table.EntityProperty;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static azure.component.constant.Constants.RESPONSE_CODE.*;
+
+/**
+ * Serves point reads of a {@link TableService} from an {@link EntityCache}.
+ * Writes through this service update or invalidate the cached entities once
+ * they are done, queries always go to the underlying service. Every call stores
+ * its result with the version of the key taken before it, so that a slow call
+ * cannot cache an older entity than a concurrent write. Cache lookups are
+ * reported to the instrumentation as accesses of the "entity" cache.
+ */
+public class CachingTableService<T extends GenericEntity> implements TableService<T> {
+
+    private final TableService<T> tableService;
+    private final EntityCache cache;
+    private final Instrumentation instrumentation;
+    private final String tableName;
+
+    public CachingTableService(TableService<T> tableService, EntityCache cache) {
+        this(tableService, cache, null);
+    }
+
+    /**
+     * @param instrumentation instrumentation receiving the cache lookups, or null for none
+     */
+    public CachingTableService(TableService<T> tableService, EntityCache cache, Instrumentation instrumentation) {
+        this.tableService = tableService;
+        this.cache = cache;
+        this.instrumentation = instrumentation != null ? instrumentation : Instrumentation.noop();
+        this.tableName = tableService.getTableName();
+    }
+
+    public EntityCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public boolean insertOrReplace(T entity) {
+        long version = version(entity);
+        boolean success = tableService.insertOrReplace(entity);
+        if (success) {
+            putWritten(entity, version);
+        } else {
+            invalidate(entity);
+        }
+        return success;
+    }
+
+    @Override
+    public boolean insertOrMerge(T entity) {
+        // The stored entity is only known after a read
+        boolean success = tableService.insertOrMerge(entity);
+        invalidate(entity);
+        return success;
+    }
+
+    @Override
+    public BatchResult<T> insertOrReplaceBatch(List<T> entities) {
+        Map<T, Long> versions = new IdentityHashMap<>();
+        entities.forEach(entity -> versions.put(entity, version(entity)));
+
+        BatchResult<T> result = tableService.insertOrReplaceBatch(entities);
+        for (BatchResult.EntityResult<T> entityResult : result.getResults()) {
+            Long version = versions.get(entityResult.getEntity());
+            if (entityResult.isSuccess() && version != null) {
+                putWritten(entityResult.getEntity(), version);
+            } else {
+                invalidate(entityResult.getEntity());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public BatchResult<T> insertOrMergeBatch(List<T> entities) {
+        BatchResult<T> result = tableService.insertOrMergeBatch(entities);
+        entities.forEach(this::invalidate);
+        return result;
+    }
+
+    @Override
+    public int insert(T entity) {
+        long version = version(entity);
+        int status = tableService.insert(entity);
+        if (status == CREATED) {
+            putWritten(entity, version);
+        } else {
+            invalidate(entity);
+        }
+        return status;
+    }
+
+    @Override
+    public int replace(T entity) {
+        long version = version(entity);
+        int status = tableService.replace(entity);
+        if (status == OK) {
+            putWritten(entity, version);
+        } else {
+            invalidate(entity);
+        }
+        return status;
+    }
+
+    @Override
+    public int merge(T entity) {
+        int status = tableService.merge(entity);
+        invalidate(entity);
+        return status;
+    }
+
+    @Override
+    public int merge(String partitionKey, String rowKey, String etag, Map<String, EntityProperty> properties) {
+        int status = tableService.merge(partitionKey, rowKey, etag, properties);
+        cache.invalidate(tableName, partitionKey, rowKey);
+        return status;
+    }
+
+    @Override
+    public int delete(String partitionKey, String rowKey, String etag) {
+        long version = cache.version(tableName, partitionKey, rowKey);
+        int status = tableService.delete(partitionKey, rowKey, etag);
+        if (status == OK || status == NOT_FOUND) {
+            cache.putNotFound(tableName, partitionKey, rowKey, version);
+        } else {
+            cache.invalidate(tableName, partitionKey, rowKey);
+        }
+        return status;
+    }
+
+    @Override
+    public T delete(T entity) {
+        long version = version(entity);
+        T deleted = tableService.delete(entity);
+        if (deleted != null) {
+            cache.putNotFound(tableName, entity.getPartitionKey(), entity.getRowKey(), version);
+        } else {
+            invalidate(entity);
+        }
+        return deleted;
+    }
+
+    @Override
+    public T getEntity(T entity) {
+        if (entity.getPartitionKey() != null && entity.getRowKey() != null) {
+            return getEntity(entity.getPartitionKey(), entity.getRowKey());
+        }
+        return tableService.getEntity(entity);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getEntity(String partitionKey, String rowKey) {
+        if (partitionKey == null || rowKey == null) {
+            return null;
+        }
+
+        Object cached = lookup(partitionKey, rowKey);
+        if (cached == EntityCache.NOT_FOUND) {
+            return null;
+        }
+        if (cached != null) {
+            return (T) cached;
+        }
+
+        // getEntities tells a missing entity from a failed read, which must not be cached
+        EntityKey key = new EntityKey(partitionKey, rowKey);
+        try {
+            Map<EntityKey, T> entities = new HashMap<>();
+            load(Collections.singletonMap(key, cache.version(tableName, partitionKey, rowKey)), entities);
+            return entities.get(key);
+        } catch (RuntimeException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Not cached, the key version cannot be taken before the PartitionKey is known.
+     */
+    @Override
+    public T getEntity(String rowKey) {
+        return tableService.getEntity(rowKey);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<EntityKey, T> getEntities(Collection<EntityKey> keys) {
+        Map<EntityKey, T> entities = new HashMap<>();
+        Map<EntityKey, Long> missing = new LinkedHashMap<>();
+
+        for (EntityKey key : new LinkedHashSet<>(keys)) {
+            if (key == null || key.getPartitionKey() == null || key.getRowKey() == null) {
+                continue;
+            }
+            Object cached = lookup(key.getPartitionKey(), key.getRowKey());
+            if (cached == null) {
+                missing.put(key, cache.version(tableName, key.getPartitionKey(), key.getRowKey()));
+            } else if (cached != EntityCache.NOT_FOUND) {
+                entities.put(key, (T) cached);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            load(missing, entities);
+        }
+
+        return entities;
+    }
+
+    /**
+     * Look up a key in the cache and report whether it was held.
+     *
+     * @return cached entity, {@link EntityCache#NOT_FOUND}, or null if not cached
+     */
+    private Object lookup(String partitionKey, String rowKey) {
+        Object cached = cache.get(tableName, partitionKey, rowKey);
+        instrumentation.cacheAccess(tableName, "entity", cached != null);
+        return cached;
+    }
+
+    /**
+     * Read the keys missing from the cache and cache the result under the versions taken before.
+     * Fails rather than leaving out the entities it could not read.
+     */
+    private void load(Map<EntityKey, Long> missing, Map<EntityKey, T> entities) {
+        Map<EntityKey, T> loaded = tableService.getEntities(missing.keySet());
+        missing.forEach((key, version) -> {
+            T entity = loaded.get(key);
+            if (entity != null) {
+                cache.put(tableName, entity, version);
+                entities.put(key, entity);
+            } else {
+                cache.putNotFound(tableName, key.getPartitionKey(), key.getRowKey(), version);
+            }
+        });
+    }
+
+    @Override
+    public List<T> queryAll() {
+        return tableService.queryAll();
+    }
+
+    @Override
+    public List<T> query(String partitionKey, String azureFilter) {
+        return tableService.query(partitionKey, azureFilter);
+    }
+
+    @Override
+    public List<T> query(String partitionKey, String azureFilter, String... columns) {
+        return tableService.query(partitionKey, azureFilter, columns);
+    }
+
+    @Override
+    public Stream<T> queryStream(String partitionKey, String azureFilter) {
+        return tableService.queryStream(partitionKey, azureFilter);
+    }
+
+    @Override
+    public List<T> query(Filter filter) {
+        return tableService.query(filter);
+    }
+
+    @Override
+    public Stream<T> queryStream(Filter filter) {
+        return tableService.queryStream(filter);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter) {
+        return tableService.queryPage(rowCount, currentPage, partitionKey, azureFilter);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter, String... columns) {
+        return tableService.queryPage(rowCount, currentPage, partitionKey, azureFilter, columns);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter) {
+        return tableService.queryPage(rowCount, cursor, partitionKey, azureFilter);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter, String... columns) {
+        return tableService.queryPage(rowCount, cursor, partitionKey, azureFilter, columns);
+    }
+
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter) {
+        return tableService.queryTop(count, partitionKey, azureFilter);
+    }
+
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter, String... columns) {
+        return tableService.queryTop(count, partitionKey, azureFilter, columns);
+    }
+
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter, String property, boolean descending) {
+        return tableService.queryTop(count, partitionKey, azureFilter, property, descending);
+    }
+
+    @Override
+    public int count() {
+        return tableService.count();
+    }
+
+    @Override
+    public int count(String partitionKey, String azureFilter) {
+        return tableService.count(partitionKey, azureFilter);
+    }
+
+    /**
+     * Cache a copy of a written entity, the caller keeps using its own instance.
+     */
+    private void putWritten(T entity, long version) {
+        T copy = EntityUtils.copy(entity);
+        if (copy != null) {
+            cache.put(tableName, copy, version);
+        } else {
+            invalidate(entity);
+        }
+    }
+
+    private long version(T entity) {
+        return cache.version(tableName, entity.getPartitionKey(), entity.getRowKey());
+    }
+
+    private void invalidate(T entity) {
+        if (entity.getPartitionKey() != null && entity.getRowKey() != null) {
+            cache.invalidate(tableName, entity.getPartitionKey(), entity.getRowKey());
+        }
+    }
+}
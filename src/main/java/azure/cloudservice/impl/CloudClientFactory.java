@@ -0,0 +1,163 @@
+package azure.cloudservice.impl;
+
+import com.microsoft.azure.storage.CloudStorageAccount;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobContainerPublicAccessType;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.CloudBlobClient;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.table.CloudTable;
+import com.microsoft.azure.storage.table.CloudTableClient;
+
+import java.net.URISyntaxException;
+import java.security.InvalidKeyException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static azure.component.constant.Constants.AZURE_ACC_KEY;
+import static azure.component.constant.Constants.AZURE_ACC_NAME;
+
+/**
+ * Process-wide storage clients. One client of each kind is created per
+ * account and tables and blob containers are checked/created at most once per process.
+ */
+public class CloudClientFactory {
+
+    private static final ConcurrentHashMap<String, CloudStorageAccount> accounts = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CloudTableClient> tableClients = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CloudBlobClient> blobClients = new ConcurrentHashMap<>();
+
+    // URIs of the tables known to exist
+    private static final Set<String> knownTables = ConcurrentHashMap.newKeySet();
+
+    // Containers known to exist, keyed by container URI
+    private static final ConcurrentHashMap<String, CloudBlobContainer> knownContainers = new ConcurrentHashMap<>();
+
+    public static CloudTableClient getTableClient() {
+        String connectionString = getConnectionString();
+        return tableClients.computeIfAbsent(connectionString,
+                key -> getAccount(connectionString).createCloudTableClient());
+    }
+
+    public static CloudBlobClient getBlobClient() {
+        String connectionString = getConnectionString();
+        return blobClients.computeIfAbsent(connectionString,
+                key -> getAccount(connectionString).createCloudBlobClient());
+    }
+
+    /**
+     * Get a reference to a table, creating the table on the first call
+     * for this table in the process. A table that could not be created is
+     * still returned, and created again on the next call.
+     *
+     * @param tableName table name
+     * @return table reference, or null if the account settings are invalid
+     */
+    public static CloudTable getTable(String tableName) {
+        CloudTable cloudTable;
+        try {
+            // Create a cloud table object for the table.
+            cloudTable = getTableClient().getTableReference(tableName);
+        } catch (URISyntaxException | StorageException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // Concurrent first calls may both create the table, which is harmless
+        String uri = cloudTable.getUri().toString();
+        if (!knownTables.contains(uri)) {
+            try {
+                cloudTable.createIfNotExists();
+                knownTables.add(uri);
+            } catch (StorageException | RuntimeException e) {
+                // Output the stack trace.
+                e.printStackTrace();
+            }
+        }
+        return cloudTable;
+    }
+
+    /**
+     * Forget that a table exists, e.g. after it has been deleted.
+     *
+     * @param cloudTable table reference
+     */
+    public static void forgetTable(CloudTable cloudTable) {
+        knownTables.remove(cloudTable.getUri().toString());
+    }
+
+    /**
+     * Get a reference to a blob container, creating the container with public
+     * access on the first call for this container in the process.
+     *
+     * @param containerName container name
+     * @return container reference, or null if the account could not be reached
+     */
+    public static CloudBlobContainer getBlobContainer(String containerName) {
+        return getBlobContainer(containerName, BlobContainerPublicAccessType.CONTAINER);
+    }
+
+    /**
+     * Get a reference to a blob container, creating the container on the first
+     * call for this container in the process. A container that could not be
+     * created is still returned, and created again on the next call.
+     *
+     * @param containerName container name
+     * @param accessType    public access of the container if it is created
+     * @return container reference, or null if the account settings are invalid
+     */
+    public static CloudBlobContainer getBlobContainer(String containerName, BlobContainerPublicAccessType accessType) {
+        CloudBlobContainer reference;
+        try {
+            reference = getBlobClient().getContainerReference(containerName);
+        } catch (URISyntaxException | StorageException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        String uri = reference.getUri().toString();
+        CloudBlobContainer known = knownContainers.get(uri);
+        if (known != null) {
+            return known;
+        }
+        try {
+            reference.createIfNotExists(accessType, new BlobRequestOptions(), new OperationContext());
+            known = knownContainers.putIfAbsent(uri, reference);
+        } catch (StorageException | RuntimeException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+        return known != null ? known : reference;
+    }
+
+    /**
+     * Forget that a blob container exists, e.g. after it was reported missing.
+     *
+     * @param container container reference
+     */
+    public static void forgetBlobContainer(CloudBlobContainer container) {
+        knownContainers.remove(container.getUri().toString());
+    }
+
+    private static CloudStorageAccount getAccount(String connectionString) {
+        return accounts.computeIfAbsent(connectionString, key -> {
+            try {
+                // Retrieve storage account from connection-string.
+                return CloudStorageAccount.parse(connectionString);
+            } catch (URISyntaxException | InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static String getConnectionString() {
+        String name = System.getenv(AZURE_ACC_NAME);
+        String key = System.getenv(AZURE_ACC_KEY);
+
+        return "DefaultEndpointsProtocol=https;" +
+                "AccountName=" + name + ";" +
+                "AccountKey=" + key + ";" +
+                "TableEndpoint=https://" + name + ".table.core.windows.net;";
+    }
+}
@@ -0,0 +1,114 @@
+package azure.cloudservice.impl;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches entity counts per (partition, filter).
+ *
+ * Deletes through the owning service keep unfiltered counts exact. Any other
+ * change to a partition drops the counts that may include it, since an upsert
+ * does not tell whether a row was added and a filter cannot be evaluated locally.
+ * Entries also expire after a TTL to pick up writes made by other processes.
+ */
+class CountCache {
+
+    private final long ttlMillis;
+    private final ConcurrentHashMap<CountKey, CachedCount> counts = new ConcurrentHashMap<>();
+
+    // Bumped on every change, so that a count computed concurrently with a write is not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    CountCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    Integer get(String partitionKey, String filter) {
+        CountKey key = new CountKey(partitionKey, filter);
+        CachedCount cached = counts.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.expiresAt < System.currentTimeMillis()) {
+            counts.remove(key, cached);
+            return null;
+        }
+        return cached.count;
+    }
+
+    void put(String partitionKey, String filter, int count, long expectedGeneration) {
+        if (generation.get() == expectedGeneration) {
+            counts.put(new CountKey(partitionKey, filter), new CachedCount(count, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Apply a known change of row count to a partition.
+     */
+    void adjust(String partitionKey, int delta) {
+        generation.incrementAndGet();
+        counts.keySet().removeIf(key -> key.filter != null && key.covers(partitionKey));
+        counts.computeIfPresent(new CountKey(partitionKey, null), (key, cached) -> cached.plus(delta));
+        counts.computeIfPresent(new CountKey(null, null), (key, cached) -> cached.plus(delta));
+    }
+
+    /**
+     * Drop every count that may include rows of the given partition.
+     */
+    void invalidate(String partitionKey) {
+        generation.incrementAndGet();
+        counts.keySet().removeIf(key -> key.covers(partitionKey));
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        counts.clear();
+    }
+
+    private static final class CachedCount {
+        private final int count;
+        private final long expiresAt;
+
+        CachedCount(int count, long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+
+        CachedCount plus(int delta) {
+            return new CachedCount(Math.max(count + delta, 0), expiresAt);
+        }
+    }
+
+    private static final class CountKey {
+        private final String partitionKey;
+        private final String filter;
+
+        CountKey(String partitionKey, String filter) {
+            this.partitionKey = partitionKey;
+            this.filter = filter;
+        }
+
+        boolean covers(String partitionKey) {
+            return this.partitionKey == null || this.partitionKey.equals(partitionKey);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CountKey)) return false;
+            CountKey that = (CountKey) o;
+            return Objects.equals(partitionKey, that.partitionKey)
+                    && Objects.equals(filter, that.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(partitionKey, filter);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package azure.cloudservice.impl;
+
+import azure.cloudservice.TableService;
+import azure.component.BatchResult;
+import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+import azure.component.GenericEntity;
+import azure.component.filter.Filter;
+import azure.component.filter.KeyRange;
+import azure.component.instrumentation.Instrumentation;
+import azure.component.instrumentation.OperationRecorder;
+import azure.component.util.EntityUtils;
+import com.microsoft.azure.storage.table.EntityProperty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Records every call of a {@link TableService} as one operation: its latency,
+ * the requests it sent, the estimated size of the entities it wrote, the entities
+ * it returned and its failure, if any.
+ *
+ * Requests sent by a {@link TableServiceImpl} on the calling thread, or on the
+ * threads it hands the work to, are attributed to the call. Streams are recorded
+ * until they are closed and their requests are recorded as operations of their own,
+ * since they run whenever the consumer asks for the next segment.
+ */
+public class InstrumentedTableService<T extends GenericEntity> implements TableService<T> {
+
+    private final TableService<T> tableService;
+    private final Instrumentation instrumentation;
+    private final String tableName;
+
+    public InstrumentedTableService(TableService<T> tableService, Instrumentation instrumentation) {
+        this.tableService = tableService;
+        this.instrumentation = instrumentation;
+        this.tableName = tableService.getTableName();
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public boolean insertOrReplace(T entity) {
+        return recordWrite("insertOrReplace", entity.getPartitionKey(), EntityUtils.estimateSize(entity), () -> tableService.insertOrReplace(entity));
+    }
+
+    @Override
+    public boolean insertOrMerge(T entity) {
+        return recordWrite("insertOrMerge", entity.getPartitionKey(), EntityUtils.estimateSize(entity), () -> tableService.insertOrMerge(entity));
+    }
+
+    @Override
+    public BatchResult<T> insertOrReplaceBatch(List<T> entities) {
+        return recordWrite("insertOrReplaceBatch", null, estimateSize(entities), () -> tableService.insertOrReplaceBatch(entities));
+    }
+
+    @Override
+    public BatchResult<T> insertOrMergeBatch(List<T> entities) {
+        return recordWrite("insertOrMergeBatch", null, estimateSize(entities), () -> tableService.insertOrMergeBatch(entities));
+    }
+
+    @Override
+    public int insert(T entity) {
+        return recordWrite("insert", entity.getPartitionKey(), EntityUtils.estimateSize(entity), () -> tableService.insert(entity));
+    }
+
+    @Override
+    public int replace(T entity) {
+        return recordWrite("replace", entity.getPartitionKey(), EntityUtils.estimateSize(entity), () -> tableService.replace(entity));
+    }
+
+    @Override
+    public int merge(T entity) {
+        return recordWrite("merge", entity.getPartitionKey(), EntityUtils.estimateSize(entity), () -> tableService.merge(entity));
+    }
+
+    @Override
+    public int merge(String partitionKey, String rowKey, String etag, Map<String, EntityProperty> properties) {
+        return recordWrite("merge", partitionKey, EntityUtils.estimateSize(properties), () -> tableService.merge(partitionKey, rowKey, etag, properties));
+    }
+
+    @Override
+    public int delete(String partitionKey, String rowKey, String etag) {
+        return record("delete", partitionKey, () -> tableService.delete(partitionKey, rowKey, etag), null);
+    }
+
+    @Override
+    public T delete(T entity) {
+        return record("delete", entity.getPartitionKey(), () -> tableService.delete(entity), null);
+    }
+
+    @Override
+    public T getEntity(T entity) {
+        return record("getEntity", entity.getPartitionKey(), () -> tableService.getEntity(entity), result -> result != null ? 1 : 0);
+    }
+
+    @Override
+    public T getEntity(String partitionKey, String rowKey) {
+        return record("getEntity", partitionKey, () -> tableService.getEntity(partitionKey, rowKey), result -> result != null ? 1 : 0);
+    }
+
+    @Override
+    public T getEntity(String rowKey) {
+        return record("getEntity", null, () -> tableService.getEntity(rowKey), result -> result != null ? 1 : 0);
+    }
+
+    @Override
+    public Map<EntityKey, T> getEntities(Collection<EntityKey> keys) {
+        return record("getEntities", null, () -> tableService.getEntities(keys), Map::size);
+    }
+
+    @Override
+    public List<T> queryAll() {
+        return record("queryAll", null, () -> tableService.queryAll(), List::size);
+    }
+
+    @Override
+    public List<T> query(String partitionKey, String azureFilter) {
+        return record("query", partitionKey, () -> tableService.query(partitionKey, azureFilter), List::size);
+    }
+
+    @Override
+    public List<T> query(String partitionKey, String azureFilter, String... columns) {
+        return record("query", partitionKey, () -> tableService.query(partitionKey, azureFilter, columns), List::size);
+    }
+
+    @Override
+    public Stream<T> queryStream(String partitionKey, String azureFilter) {
+        OperationRecorder recorder = instrumentation.start(tableName, "queryStream", partitionKey);
+        return tableService.queryStream(partitionKey, azureFilter)
+                .peek(entity -> recorder.entities(1))
+                .onClose(recorder::close);
+    }
+
+    @Override
+    public List<T> query(Filter filter) {
+        return record("query", KeyRange.of(filter).getPartitionKey(), () -> tableService.query(filter), List::size);
+    }
+
+    @Override
+    public Stream<T> queryStream(Filter filter) {
+        OperationRecorder recorder = instrumentation.start(tableName, "queryStream", KeyRange.of(filter).getPartitionKey());
+        return tableService.queryStream(filter)
+                .peek(entity -> recorder.entities(1))
+                .onClose(recorder::close);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter) {
+        return record("queryPage", partitionKey, () -> tableService.queryPage(rowCount, currentPage, partitionKey, azureFilter), page -> page.getRows() != null ? page.getRows().size() : 0);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter, String... columns) {
+        return record("queryPage", partitionKey, () -> tableService.queryPage(rowCount, currentPage, partitionKey, azureFilter, columns), page -> page.getRows() != null ? page.getRows().size() : 0);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter) {
+        return record("queryPage", partitionKey, () -> tableService.queryPage(rowCount, cursor, partitionKey, azureFilter), page -> page.getRows() != null ? page.getRows().size() : 0);
+    }
+
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter, String... columns) {
+        return record("queryPage", partitionKey, () -> tableService.queryPage(rowCount, cursor, partitionKey, azureFilter, columns), page -> page.getRows() != null ? page.getRows().size() : 0);
+    }
+
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter) {
+        return record("queryTop", partitionKey, () -> tableService.queryTop(count, partitionKey, azureFilter), List::size);
+    }
+
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter, String... columns) {
+        return record("queryTop", partitionKey, () -> tableService.queryTop(count, partitionKey, azureFilter, columns), List::size);
+    }
+
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter, String property, boolean descending) {
+        return record("queryTop", partitionKey, () -> tableService.queryTop(count, partitionKey, azureFilter, property, descending), List::size);
+    }
+
+    @Override
+    public int count() {
+        return record("count", null, () -> tableService.count(), null);
+    }
+
+    @Override
+    public int count(String partitionKey, String azureFilter) {
+        return record("count", partitionKey, () -> tableService.count(partitionKey, azureFilter), null);
+    }
+
+    /**
+     * Record a write with the estimated size of what it sends, which the SDK does not report.
+     */
+    private <R> R recordWrite(String operation, String partitionKey, long bytesSent, Supplier<R> call) {
+        return record(operation, partitionKey, () -> {
+            OperationScope.current().bytesSent(bytesSent);
+            return call.get();
+        }, null);
+    }
+
+    private static long estimateSize(List<? extends GenericEntity> entities) {
+        long size = 0;
+        for (GenericEntity entity : entities) {
+            size += EntityUtils.estimateSize(entity);
+        }
+        return size;
+    }
+
+    private <R> R record(String operation, String partitionKey, Supplier<R> call, ToIntFunction<R> entityCount) {
+        try (OperationScope scope = OperationScope.open(instrumentation.start(tableName, operation, partitionKey))) {
+            try {
+                R result = call.get();
+                if (entityCount != null) {
+                    scope.recorder().entities(entityCount.applyAsInt(result));
+                }
+                return result;
+            } catch (RuntimeException e) {
+                scope.recorder().error(e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package azure.cloudservice.impl;
+
+import azure.component.instrumentation.OperationRecorder;
+
+/**
+ * Makes an operation recorder current on a thread, so that the storage calls
+ * made below a service method are recorded as round trips of that method.
+ */
+final class OperationScope implements AutoCloseable {
+
+    private static final ThreadLocal<OperationRecorder> CURRENT = new ThreadLocal<>();
+
+    private final OperationRecorder recorder;
+    private final OperationRecorder previous;
+    private final boolean owner;
+
+    private OperationScope(OperationRecorder recorder, boolean owner) {
+        this.recorder = recorder;
+        this.previous = CURRENT.get();
+        this.owner = owner;
+        CURRENT.set(recorder);
+    }
+
+    /**
+     * Start a scope that closes the recorder when it ends.
+     */
+    static OperationScope open(OperationRecorder recorder) {
+        return new OperationScope(recorder, true);
+    }
+
+    /**
+     * @return recorder of the innermost scope of this thread, or null if none
+     */
+    static OperationRecorder current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run a task of the current operation on another thread.
+     */
+    static Runnable propagate(Runnable task) {
+        OperationRecorder recorder = CURRENT.get();
+        if (recorder == null) {
+            return task;
+        }
+        return () -> {
+            OperationScope scope = new OperationScope(recorder, false);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    OperationRecorder recorder() {
+        return recorder;
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+        if (owner) {
+            recorder.close();
+        }
+    }
+}
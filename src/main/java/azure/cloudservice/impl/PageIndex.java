@@ -0,0 +1,115 @@
+package azure.cloudservice.impl;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Remembers the continuation cursor at which each page of a query starts,
+ * so that jumping to page N can resume from the closest known page instead
+ * of re-reading pages 1..N-1.
+ *
+ * Cursors are key positions, so a boundary stays valid after writes but the
+ * pages around it may no longer hold exactly rowCount rows. Writes through the
+ * owning service therefore drop the boundaries of the affected partition.
+ */
+class PageIndex {
+
+    private final int maxQueries;
+
+    // Least recently used queries are evicted first
+    private final LinkedHashMap<QueryKey, TreeMap<Integer, String>> boundaries;
+
+    PageIndex(int maxQueries) {
+        this.maxQueries = maxQueries;
+        this.boundaries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return closest known page at or before the given page, with its start cursor.
+     * Page 1 always starts at a null cursor.
+     */
+    synchronized Map.Entry<Integer, String> floor(int rowCount, String partitionKey, String filter, int page) {
+        TreeMap<Integer, String> pages = boundaries.get(new QueryKey(rowCount, partitionKey, filter));
+        if (pages != null) {
+            Map.Entry<Integer, String> entry = pages.floorEntry(page);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(1, null);
+    }
+
+    synchronized String get(int rowCount, String partitionKey, String filter, int page) {
+        TreeMap<Integer, String> pages = boundaries.get(new QueryKey(rowCount, partitionKey, filter));
+        return pages != null ? pages.get(page) : null;
+    }
+
+    synchronized void put(int rowCount, String partitionKey, String filter, int page, String cursor) {
+        if (page <= 1 || cursor == null) {
+            return;
+        }
+
+        QueryKey key = new QueryKey(rowCount, partitionKey, filter);
+        TreeMap<Integer, String> pages = boundaries.get(key);
+        if (pages == null) {
+            pages = new TreeMap<>();
+            boundaries.put(key, pages);
+
+            if (boundaries.size() > maxQueries) {
+                Iterator<QueryKey> eldest = boundaries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        pages.put(page, cursor);
+    }
+
+    synchronized void remove(int rowCount, String partitionKey, String filter, int page) {
+        TreeMap<Integer, String> pages = boundaries.get(new QueryKey(rowCount, partitionKey, filter));
+        if (pages != null) {
+            pages.remove(page);
+        }
+    }
+
+    /**
+     * Drop boundaries of queries that may contain rows of the given partition.
+     */
+    synchronized void invalidate(String partitionKey) {
+        boundaries.keySet().removeIf(key -> key.partitionKey == null || key.partitionKey.equals(partitionKey));
+    }
+
+    synchronized void clear() {
+        boundaries.clear();
+    }
+
+    private static final class QueryKey {
+        private final int rowCount;
+        private final String partitionKey;
+        private final String filter;
+
+        QueryKey(int rowCount, String partitionKey, String filter) {
+            this.rowCount = rowCount;
+            this.partitionKey = partitionKey;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof QueryKey)) return false;
+            QueryKey that = (QueryKey) o;
+            return rowCount == that.rowCount
+                    && Objects.equals(partitionKey, that.partitionKey)
+                    && Objects.equals(filter, that.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rowCount, partitionKey, filter);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package azure.cloudservice.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scans disjoint PartitionKey ranges at the same time and merges their results.
+ * Results of different ranges are interleaved, so the merged order is unspecified.
+ */
+class ParallelScan<T> {
+
+    private static final Object END = new Object();
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    // Segmented query of the rows with lowerBound <= PartitionKey < upperBound, null bounds are open
+    private final BiFunction<String, String, Stream<T>> rangeQuery;
+    private final Executor executor;
+
+    ParallelScan(BiFunction<String, String, Stream<T>> rangeQuery, Executor executor) {
+        this.rangeQuery = rangeQuery;
+        this.executor = executor;
+    }
+
+    /**
+     * Split the key space at the given boundaries.
+     *
+     * @return [lowerBound, upperBound) pairs covering every key exactly once
+     */
+    static List<String[]> ranges(List<String> boundaries) {
+        List<String[]> ranges = new ArrayList<>();
+        String lowerBound = null;
+        for (String boundary : new TreeSet<>(boundaries)) {
+            ranges.add(new String[]{lowerBound, boundary});
+            lowerBound = boundary;
+        }
+        ranges.add(new String[]{lowerBound, null});
+        return ranges;
+    }
+
+    /**
+     * Scan every range and pass the entities to the sink, which is called
+     * concurrently from several threads. Returns once all ranges are done.
+     */
+    void scan(List<String> boundaries, Consumer<? super T> sink) {
+        CompletableFuture<?>[] futures = ranges(boundaries).stream()
+                .map(range -> CompletableFuture.runAsync(() -> rangeQuery.apply(range[0], range[1]).forEach(sink), executor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Scan every range in the background and merge the entities into one stream.
+     * Workers wait while the consumer is behind by queueCapacity entities, and stop
+     * once it has taken nothing for abandonTimeoutMillis, so that a stream which is
+     * neither consumed to the end nor closed, e.g. after findFirst, does not hold
+     * them forever. Closing the stream stops the workers at once.
+     * <p>
+     * If a range fails or the workers stopped, the stream throws an IllegalStateException
+     * after the entities read so far, instead of ending early.
+     */
+    Stream<T> stream(List<String> boundaries, int queueCapacity, long abandonTimeoutMillis) {
+        List<String[]> ranges = ranges(boundaries);
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicInteger remaining = new AtomicInteger(ranges.size());
+
+        for (String[] range : ranges) {
+            executor.execute(() -> {
+                try {
+                    rangeQuery.apply(range[0], range[1])
+                            .forEach(entity -> offer(queue, entity, cancelled, failure, abandonTimeoutMillis));
+                } catch (CancellationException ignored) {
+                } catch (Exception e) {
+                    // Stop the other ranges, the consumer gets the failure
+                    failure.compareAndSet(null, e);
+                    cancelled.set(true);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        try {
+                            offer(queue, END, cancelled, failure, abandonTimeoutMillis);
+                        } catch (CancellationException ignored) {
+                        }
+                    }
+                }
+            });
+        }
+
+        Iterator<T> iterator = new Iterator<T>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    try {
+                        next = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancelled.set(true);
+                        next = END;
+                        return false;
+                    }
+                    if (next == null && failure.get() != null) {
+                        throw new IllegalStateException("Parallel scan failed", failure.get());
+                    }
+                }
+                if (next == END && failure.get() != null) {
+                    throw new IllegalStateException("Parallel scan failed", failure.get());
+                }
+                return next != END;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T entity = (T) next;
+                next = null;
+                return entity;
+            }
+        };
+
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> cancelled.set(true));
+    }
+
+    private static void offer(BlockingQueue<Object> queue, Object item, AtomicBoolean cancelled,
+                              AtomicReference<Exception> failure, long abandonTimeoutMillis) {
+        long deadline = System.currentTimeMillis() + abandonTimeoutMillis;
+        try {
+            while (!queue.offer(item, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    throw new CancellationException();
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    failure.compareAndSet(null, new TimeoutException(
+                            "Parallel scan stopped, its stream was not consumed for " + abandonTimeoutMillis + " ms"));
+                    cancelled.set(true);
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+            throw new CancellationException();
+        }
+    }
+}
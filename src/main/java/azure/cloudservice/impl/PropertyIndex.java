@@ -0,0 +1,167 @@
+package azure.cloudservice.impl;
+
+import azure.component.EntityKey;
+import azure.component.util.QueryUtils;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.table.CloudTable;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.table.DynamicTableEntity;
+import com.microsoft.azure.storage.table.EntityProperty;
+import com.microsoft.azure.storage.table.EntityResolver;
+import com.microsoft.azure.storage.table.TableOperation;
+import com.microsoft.azure.storage.table.TableQuery;
+import com.microsoft.azure.storage.table.TableResult;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static azure.component.constant.Constants.ETAG_ANY;
+import static azure.component.constant.Constants.PARTITION_KEY;
+
+/**
+ * Inverted index of model properties, stored in a table of its own.
+ * An index partition holds the keys of the entities having a given value
+ * of a given property. Entries are only added on write: readers must check
+ * the entities they find, and remove the entries that no longer match.
+ * Entities written before a property was indexed have no entries, so the index
+ * of a property is only complete once it has been rebuilt and marked as built.
+ * Index calls run through the executor of the indexed table.
+ */
+public class PropertyIndex {
+
+    private static final String TARGET_PARTITION_KEY = "TargetPartitionKey";
+    private static final String TARGET_ROW_KEY = "TargetRowKey";
+    // Column names cannot hold '!', so this partition never holds entries
+    private static final String BUILT_PARTITION_KEY = "!built";
+
+    // Keys are limited to 1 KB, longer values are hashed
+    private static final int MAX_ENCODED_VALUE_LENGTH = 512;
+
+    private final CloudTable indexTable;
+    private final TableExecutor executor;
+    private final Set<String> builtColumns = ConcurrentHashMap.newKeySet();
+
+    PropertyIndex(String indexTableName, TableExecutor executor) {
+        this.indexTable = CloudClientFactory.getTable(indexTableName);
+        this.executor = executor;
+    }
+
+    public void add(String columnName, Object value, String partitionKey, String rowKey) {
+        HashMap<String, EntityProperty> properties = new HashMap<>();
+        properties.put(TARGET_PARTITION_KEY, new EntityProperty(partitionKey));
+        properties.put(TARGET_ROW_KEY, new EntityProperty(rowKey));
+
+        DynamicTableEntity entry = new DynamicTableEntity(indexPartition(columnName, value), indexRow(partitionKey, rowKey), properties);
+        try {
+            execute(TableOperation.insertOrReplace(entry), true);
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+    }
+
+    public void remove(String columnName, Object value, String partitionKey, String rowKey) {
+        DynamicTableEntity entry = new DynamicTableEntity(indexPartition(columnName, value), indexRow(partitionKey, rowKey));
+        entry.setEtag(ETAG_ANY);
+        try {
+            execute(TableOperation.delete(entry), false);
+        } catch (Exception ignored) {
+            // Already removed
+        }
+    }
+
+    /**
+     * Record that every entity has entries for the given column.
+     */
+    public void markBuilt(String columnName) {
+        try {
+            execute(TableOperation.insertOrReplace(new DynamicTableEntity(BUILT_PARTITION_KEY, columnName)), true);
+            builtColumns.add(columnName);
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return whether the index of the given column has been built, false if that cannot be read
+     */
+    public boolean isBuilt(String columnName) {
+        if (builtColumns.contains(columnName)) {
+            return true;
+        }
+        try {
+            TableOperation retrieve = TableOperation.retrieve(BUILT_PARTITION_KEY, columnName, DynamicTableEntity.class);
+            if (execute(retrieve, true).getResult() != null) {
+                builtColumns.add(columnName);
+                return true;
+            }
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * @return keys of the entities that had the given value when they were written
+     * @throws IllegalStateException if the index could not be read to the end
+     */
+    public List<EntityKey> find(String columnName, Object value) {
+        TableQuery<DynamicTableEntity> query = TableQuery.from(DynamicTableEntity.class)
+                .where(QueryUtils.getEqualFilter(PARTITION_KEY, indexPartition(columnName, value)))
+                .select(new String[]{TARGET_PARTITION_KEY, TARGET_ROW_KEY});
+        EntityResolver<EntityKey> resolver = (pk, rk, timeStamp, properties, etag) -> new EntityKey(
+                properties.get(TARGET_PARTITION_KEY).getValueAsString(),
+                properties.get(TARGET_ROW_KEY).getValueAsString()
+        );
+
+        return SegmentedIterator.stream((ResultContinuation token) -> executor.execute("index", null,
+                        (options, context) -> indexTable.executeSegmented(query, resolver, token, options, context)))
+                .collect(Collectors.toList());
+    }
+
+    private TableResult execute(TableOperation operation, boolean idempotent) throws StorageException {
+        // Index partitions are not partitions of the indexed table
+        return executor.execute("index", null, idempotent,
+                (options, context) -> indexTable.execute(operation, options, context));
+    }
+
+    private static String indexPartition(String columnName, Object value) {
+        String raw = value instanceof Date
+                ? String.valueOf(((Date) value).getTime())
+                : String.valueOf(value);
+
+        String encoded = encode(raw);
+        if (encoded.length() > MAX_ENCODED_VALUE_LENGTH) {
+            encoded = "h" + hash(raw);
+        }
+        return columnName + "_" + encoded;
+    }
+
+    private static String indexRow(String partitionKey, String rowKey) {
+        return encode(partitionKey) + "." + encode(rowKey);
+    }
+
+    private static String encode(String raw) {
+        // URL-safe Base64 has none of the characters forbidden in keys
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(String raw) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package azure.cloudservice.impl;
+
+import azure.component.cache.CacheStats;
+import azure.component.cache.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches query results by (partition, combined filter, row limit).
+ * Writes to a partition drop the results of that partition and of
+ * the queries spanning all partitions.
+ */
+class QueryCache<T> {
+
+    // Bookkeeping of an entry, counted in rows
+    private static final long ENTRY_OVERHEAD = 1;
+
+    private final LruCache<QueryKey, List<T>> cache;
+    private final long ttlMillis;
+
+    // Bumped on every invalidation, so that a result read concurrently with a write is not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    QueryCache(int maxEntries, long maxRows, long ttlMillis) {
+        this.cache = new LruCache<>(maxEntries, maxRows, rows -> rows.size() + ENTRY_OVERHEAD);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return copy of the cached result, or null if not cached
+     */
+    List<T> get(String partitionKey, String filter, int limit) {
+        List<T> rows = cache.get(new QueryKey(partitionKey, filter, limit));
+        return rows != null ? new ArrayList<>(rows) : null;
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    void put(String partitionKey, String filter, int limit, List<T> rows, long expectedGeneration) {
+        if (generation.get() == expectedGeneration) {
+            cache.put(new QueryKey(partitionKey, filter, limit), new ArrayList<>(rows), ttlMillis);
+        }
+    }
+
+    void invalidate(String partitionKey) {
+        generation.incrementAndGet();
+        cache.invalidateIf(key -> key.partitionKey == null || key.partitionKey.equals(partitionKey));
+    }
+
+    CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    private static final class QueryKey {
+        private final String partitionKey;
+        private final String filter;
+        private final int limit;
+
+        QueryKey(String partitionKey, String filter, int limit) {
+            this.partitionKey = partitionKey;
+            this.filter = filter;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof QueryKey)) return false;
+            QueryKey that = (QueryKey) o;
+            return limit == that.limit
+                    && Objects.equals(partitionKey, that.partitionKey)
+                    && Objects.equals(filter, that.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(partitionKey, filter, limit);
+        }
+    }
+}
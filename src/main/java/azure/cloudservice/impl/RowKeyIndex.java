@@ -0,0 +1,70 @@
+package azure.cloudservice.impl;
+
+import azure.component.util.QueryUtils;
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.table.CloudTable;
+import com.microsoft.azure.storage.table.DynamicTableEntity;
+import com.microsoft.azure.storage.table.TableOperation;
+import com.microsoft.azure.storage.table.TableQuery;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static azure.component.constant.Constants.ETAG_ANY;
+import static azure.component.constant.Constants.PARTITION_KEY;
+import static azure.component.constant.Constants.ROW_KEY;
+
+/**
+ * Secondary table mapping each RowKey to the PartitionKeys holding it.
+ * Index rows have the RowKey of the entity as PartitionKey and its
+ * PartitionKey as RowKey, so a lookup is a single-partition query.
+ * Index calls run through the executor of the indexed table.
+ */
+class RowKeyIndex {
+
+    private final CloudTable indexTable;
+    private final TableExecutor executor;
+
+    RowKeyIndex(String indexTableName, TableExecutor executor) {
+        this.indexTable = CloudClientFactory.getTable(indexTableName);
+        this.executor = executor;
+    }
+
+    void add(String partitionKey, String rowKey) {
+        try {
+            execute(TableOperation.insertOrReplace(new DynamicTableEntity(rowKey, partitionKey)), true);
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+    }
+
+    void remove(String partitionKey, String rowKey) {
+        try {
+            DynamicTableEntity indexEntity = new DynamicTableEntity(rowKey, partitionKey);
+            indexEntity.setEtag(ETAG_ANY);
+            execute(TableOperation.delete(indexEntity), false);
+        } catch (Exception e) {
+            // Missing index rows need no removal
+        }
+    }
+
+    /**
+     * @return PartitionKeys of the entities with the given RowKey
+     */
+    List<String> partitionsOf(String rowKey) {
+        TableQuery<DynamicTableEntity> query = TableQuery.from(DynamicTableEntity.class)
+                .where(QueryUtils.getEqualFilter(PARTITION_KEY, rowKey))
+                .select(new String[]{ROW_KEY});
+
+        return SegmentedIterator.stream((ResultContinuation token) -> executor.execute("index", null,
+                        (options, context) -> indexTable.executeSegmented(query, (pk, rk, timeStamp, properties, etag) -> rk, token, options, context)))
+                .collect(Collectors.toList());
+    }
+
+    private void execute(TableOperation operation, boolean idempotent) throws StorageException {
+        // Index partitions are not partitions of the indexed table
+        executor.execute("index", null, idempotent, (options, context) -> indexTable.execute(operation, options, context));
+    }
+}
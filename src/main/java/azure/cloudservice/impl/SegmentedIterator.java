@@ -0,0 +1,71 @@
+package azure.cloudservice.impl;
+
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultSegment;
+import com.microsoft.azure.storage.StorageException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates the results of a segmented query, fetching the next segment
+ * only when the current one has been consumed. A segment that cannot be
+ * fetched fails the iteration with an IllegalStateException, so that a
+ * failed query is never taken for a complete one.
+ */
+class SegmentedIterator<R> implements Iterator<R> {
+
+    @FunctionalInterface
+    interface SegmentFetcher<R> {
+        ResultSegment<R> fetch(ResultContinuation token) throws StorageException;
+    }
+
+    private final SegmentFetcher<R> fetcher;
+
+    private Iterator<R> current;
+    private ResultContinuation token;
+    private boolean finished;
+
+    SegmentedIterator(SegmentFetcher<R> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    static <R> Stream<R> stream(SegmentFetcher<R> fetcher) {
+        Spliterator<R> spliterator = Spliterators.spliteratorUnknownSize(
+                new SegmentedIterator<>(fetcher),
+                Spliterator.ORDERED | Spliterator.NONNULL
+        );
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((current == null || !current.hasNext()) && !finished) {
+            fetchNextSegment();
+        }
+        return current != null && current.hasNext();
+    }
+
+    @Override
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void fetchNextSegment() {
+        try {
+            ResultSegment<R> segment = fetcher.fetch(token);
+            current = segment.getResults().iterator();
+            token = segment.getContinuationToken();
+        } catch (StorageException e) {
+            throw new IllegalStateException("Cannot read the next segment of the query", e);
+        }
+        finished = token == null;
+    }
+}
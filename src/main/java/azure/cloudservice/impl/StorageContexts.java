@@ -0,0 +1,40 @@
+package azure.cloudservice.impl;
+
+import azure.component.instrumentation.OperationRecorder;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.ResponseReceivedEvent;
+import com.microsoft.azure.storage.StorageEvent;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Operation contexts reporting the responses of the storage client.
+ */
+class StorageContexts {
+
+    /**
+     * @param recorder   recorder receiving each response as a round trip
+     * @param retryAfter receives the Retry-After header of the last response, may be null
+     * @return context of one storage call
+     */
+    static OperationContext recording(OperationRecorder recorder, AtomicReference<String> retryAfter) {
+        OperationContext context = new OperationContext();
+        context.getResponseReceivedEventHandler().addListener(new StorageEvent<ResponseReceivedEvent>() {
+            @Override
+            public void eventOccurred(ResponseReceivedEvent event) {
+                Object connection = event.getConnectionObject();
+                if (connection instanceof HttpURLConnection) {
+                    HttpURLConnection http = (HttpURLConnection) connection;
+                    recorder.roundTrip(http.getContentLengthLong());
+                    if (retryAfter != null) {
+                        retryAfter.set(http.getHeaderField("Retry-After"));
+                    }
+                } else {
+                    recorder.roundTrip(-1);
+                }
+            }
+        });
+        return context;
+    }
+}
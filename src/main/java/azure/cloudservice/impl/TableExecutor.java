@@ -0,0 +1,146 @@
+package azure.cloudservice.impl;
+
+import azure.component.instrumentation.Instrumentation;
+import azure.component.instrumentation.OperationRecorder;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.RetryNoRetry;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.table.TableRequestOptions;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static azure.component.constant.Constants.RATE_LIMIT_PARTITION_STRIPES;
+
+/**
+ * Runs the storage calls of a table: waits for the rate limiters, then calls,
+ * retrying failures as told by the backoff policy. Without a policy, failures
+ * are left to the retries of the storage client.
+ *
+ * Each call of a segmented query is retried with its own continuation token,
+ * so a failed segment resumes the query where it stopped. Calls that cannot be
+ * repeated safely, e.g. an insert that may have been applied before its response
+ * was lost, are only retried when the service rejected them.
+ *
+ * Requests are recorded as round trips of the current {@link OperationScope},
+ * or as an operation of their own outside any scope.
+ */
+class TableExecutor {
+
+    @FunctionalInterface
+    interface Call<R> {
+        R call(TableRequestOptions options, OperationContext context) throws StorageException;
+    }
+
+    private final String resource;
+
+    private volatile Instrumentation instrumentation = Instrumentation.noop();
+    private volatile BackoffPolicy backoffPolicy;
+    private volatile TokenBucket tableLimiter;
+
+    // Partitions share buckets by hash, which keeps the limiters bounded
+    private volatile TokenBucket[] partitionLimiters;
+
+    TableExecutor(String resource) {
+        this.resource = resource;
+    }
+
+    Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation != null ? instrumentation : Instrumentation.noop();
+    }
+
+    void setBackoffPolicy(BackoffPolicy backoffPolicy) {
+        this.backoffPolicy = backoffPolicy;
+    }
+
+    void setRateLimits(double tableRequestsPerSecond, double partitionRequestsPerSecond) {
+        this.tableLimiter = tableRequestsPerSecond > 0 ? new TokenBucket(tableRequestsPerSecond) : null;
+
+        if (partitionRequestsPerSecond > 0) {
+            TokenBucket[] limiters = new TokenBucket[RATE_LIMIT_PARTITION_STRIPES];
+            for (int i = 0; i < limiters.length; i++) {
+                limiters[i] = new TokenBucket(partitionRequestsPerSecond);
+            }
+            this.partitionLimiters = limiters;
+        } else {
+            this.partitionLimiters = null;
+        }
+    }
+
+    /**
+     * @param operation    name under which a call outside any scope is recorded
+     * @param partitionKey partition of the call, or null if it spans partitions
+     */
+    <R> R execute(String operation, String partitionKey, Call<R> call) throws StorageException {
+        return execute(operation, partitionKey, true, call);
+    }
+
+    /**
+     * @param idempotent whether repeating a call that has been applied gives the same result
+     */
+    <R> R execute(String operation, String partitionKey, boolean idempotent, Call<R> call) throws StorageException {
+        OperationRecorder recorder = OperationScope.current();
+        if (recorder != null) {
+            return execute(recorder, partitionKey, idempotent, call);
+        }
+        try (OperationScope scope = OperationScope.open(instrumentation.start(resource, operation, partitionKey))) {
+            return execute(scope.recorder(), partitionKey, idempotent, call);
+        }
+    }
+
+    private <R> R execute(OperationRecorder recorder, String partitionKey, boolean idempotent, Call<R> call) throws StorageException {
+        BackoffPolicy policy = backoffPolicy;
+        int attempt = 0;
+
+        while (true) {
+            acquire(partitionKey);
+
+            AtomicReference<String> retryAfter = new AtomicReference<>();
+            OperationContext context = StorageContexts.recording(recorder, retryAfter);
+            TableRequestOptions options = null;
+
+            if (policy != null) {
+                options = new TableRequestOptions();
+                options.setRetryPolicyFactory(RetryNoRetry.getInstance());
+            }
+
+            try {
+                return call.call(options, context);
+            } catch (StorageException e) {
+                attempt++;
+                boolean retryable = policy != null && (idempotent ? policy.isRetryable(e) : policy.isRejected(e));
+                if (!retryable || attempt >= policy.getMaxAttempts()) {
+                    recorder.error(e);
+                    throw e;
+                }
+                recorder.retry();
+                try {
+                    Thread.sleep(policy.delayMillis(attempt, retryAfter.get()));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    recorder.error(e);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void acquire(String partitionKey) throws StorageException {
+        try {
+            TokenBucket table = tableLimiter;
+            if (table != null) {
+                table.acquire();
+            }
+            TokenBucket[] partitions = partitionLimiters;
+            if (partitions != null && partitionKey != null) {
+                partitions[(partitionKey.hashCode() & Integer.MAX_VALUE) % partitions.length].acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("OperationInterrupted", "Interrupted while waiting for the rate limiter", e);
+        }
+    }
+}
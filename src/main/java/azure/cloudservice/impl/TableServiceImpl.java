@@ -1,31 +1,79 @@
 package azure.cloudservice.impl;
 
 import azure.cloudservice.TableService;
+import azure.component.BatchResult;
 import azure.component.BootgridResponse;
+import azure.component.EntityKey;
 import azure.component.GenericEntity;
 import azure.component.annotation.AzureTableName;
+import azure.component.cache.CacheStats;
+import azure.component.filter.Filter;
+import azure.component.filter.KeyRange;
+import azure.component.instrumentation.Instrumentation;
+import azure.component.util.ContinuationUtils;
+import azure.component.util.EntityUtils;
+import azure.component.util.ExecutorUtils;
 import azure.component.util.QueryUtils;
-import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.ResultContinuation;
 import com.microsoft.azure.storage.ResultSegment;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.table.*;
 import util.GenericClassUtils;
 
-import java.net.URISyntaxException;
-import java.security.InvalidKeyException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static azure.component.constant.Constants.*;
+import static azure.component.constant.Constants.RESPONSE_CODE.*;
 
 public class TableServiceImpl<T extends GenericEntity> implements TableService<T> {
 
+    private static final EntityResolver<Boolean> KEY_RESOLVER =
+            (partitionKey, rowKey, timeStamp, properties, etag) -> Boolean.TRUE;
+
+    // Empty projection, every property is read
+    private static final String[] ALL_COLUMNS = new String[0];
+
     private CloudTable cloudTable;
     private String tableName;
     private Class<T> entityClass;
+    private PageIndex pageIndex;
+    private CountCache countCache;
+    private Executor batchExecutor = ExecutorUtils.defaultExecutor();
+    private Executor scanExecutor = ExecutorUtils.scanExecutor();
+    private Executor readExecutor = ExecutorUtils.defaultExecutor();
+    private int parallelScanRanges;
+    private volatile List<String> scanBoundaries;
+    private RowKeyIndex rowKeyIndex;
+    private QueryCache<T> queryCache;
+    private TableExecutor tableExecutor;
+    private long hedgeDelayMillis;
+    private Executor hedgeExecutor;
 
     public TableServiceImpl() {
         setEntityClass();
@@ -50,31 +98,187 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
     }
 
     private void setCloudTable() {
-        String name = System.getenv(AZURE_ACC_NAME);
-        String key = System.getenv(AZURE_ACC_KEY);
+        // Shared client, the table is only checked/created once per process
+        cloudTable = CloudClientFactory.getTable(tableName);
+        tableExecutor = new TableExecutor(tableName);
+    }
 
-        String storageConnectionString =
-                "DefaultEndpointsProtocol=https;" +
-                        "AccountName=" + name +";" +
-                        "AccountKey=" + key + ";" +
-                        "TableEndpoint=https://" + name + ".table.core.windows.net;";
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
 
-        try {
-            // Retrieve storage account from connection-string.
-            CloudStorageAccount storageAccount = CloudStorageAccount.parse(storageConnectionString);
+    /**
+     * Enable or disable the cached page-boundary index used by
+     * {@link #queryPage(int, int, String, String)}.
+     *
+     * @param enabled whether page boundaries should be remembered
+     */
+    public void setPageIndexEnabled(boolean enabled) {
+        this.pageIndex = enabled ? new PageIndex(PAGE_INDEX_MAX_QUERIES) : null;
+    }
 
-            // Create the table client.
-            CloudTableClient tableClient = storageAccount.createCloudTableClient();
+    /**
+     * Enable or disable caching of {@link #count(String, String)} results.
+     * Cached counts expire after {@code COUNT_CACHE_TTL_MILLIS}.
+     *
+     * @param enabled whether counts should be cached
+     */
+    public void setCountCacheEnabled(boolean enabled) {
+        this.countCache = enabled ? new CountCache(COUNT_CACHE_TTL_MILLIS) : null;
+    }
 
-            // Create a cloud table object for the table.
-            cloudTable = tableClient.getTableReference(tableName);
-            if (!cloudTable.exists()) {
-                cloudTable.create();
-            }
+    /**
+     * Cache the results of the query methods returning lists, {@link #query(Filter)} and
+     * {@link #queryTop(int, String, String)}; streams are never cached.
+     * Writes through this service drop the cached results of the written partition
+     * and of the queries without PartitionKey.
+     *
+     * @param maxEntries maximum number of cached queries, 0 for no limit
+     * @param maxRows    maximum number of cached rows over all queries, 0 for no limit
+     * @param ttlMillis  time to live of a cached result
+     */
+    public void setQueryCache(int maxEntries, long maxRows, long ttlMillis) {
+        this.queryCache = new QueryCache<>(maxEntries, maxRows, ttlMillis);
+    }
 
-        } catch (URISyntaxException | InvalidKeyException | StorageException e) {
-            e.printStackTrace();
+    public void disableQueryCache() {
+        this.queryCache = null;
+    }
+
+    /**
+     * @return hit and miss statistics of the query cache, or null if it is disabled
+     */
+    public CacheStats getQueryCacheStats() {
+        return queryCache != null ? queryCache.getStats() : null;
+    }
+
+    /**
+     * Record the storage calls of this service and the lookups in its caches.
+     * Wrap the service in an {@link InstrumentedTableService} to also record
+     * the latency of each call through all its requests.
+     *
+     * @param instrumentation instrumentation, or null for none
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        tableExecutor.setInstrumentation(instrumentation);
+    }
+
+    public Instrumentation getInstrumentation() {
+        return tableExecutor.getInstrumentation();
+    }
+
+    /**
+     * Retry failed storage calls of this service, instead of relying on the retries
+     * of the storage client. A query is retried from the segment that failed.
+     * Inserts, deletes and writes conditional on an ETag are only retried when throttled,
+     * since repeating one that has been applied would report a false conflict.
+     *
+     * @param backoffPolicy retry policy, e.g. {@link BackoffPolicy#defaultPolicy()}, or null to disable
+     */
+    public void setBackoffPolicy(BackoffPolicy backoffPolicy) {
+        tableExecutor.setBackoffPolicy(backoffPolicy);
+    }
+
+    /**
+     * Limit the rate of storage calls of this service, to stay under the scalability
+     * targets of the account instead of being throttled. Calls wait for a permit.
+     *
+     * @param tableRequestsPerSecond     calls per second to the table, 0 for no limit
+     * @param partitionRequestsPerSecond calls per second to a single partition, 0 for no limit
+     */
+    public void setRateLimits(double tableRequestsPerSecond, double partitionRequestsPerSecond) {
+        tableExecutor.setRateLimits(tableRequestsPerSecond, partitionRequestsPerSecond);
+    }
+
+    /**
+     * Hedge point reads: if a read has not answered within the delay, send it
+     * again and take the first answer. Around the p95 latency is a good delay.
+     *
+     * @param hedgeDelayMillis delay before the second read, 0 to disable hedging
+     */
+    public void setHedgedReads(long hedgeDelayMillis) {
+        if (hedgeDelayMillis > 0 && hedgeExecutor == null) {
+            hedgeExecutor = ExecutorUtils.newBoundedExecutor(HEDGE_MAX_CONCURRENCY);
         }
+        this.hedgeDelayMillis = hedgeDelayMillis;
+    }
+
+    /**
+     * Set the executor on which the chunks of a batch write run concurrently.
+     *
+     * @param batchExecutor executor, the shared storage pool by default
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Set the executor on which the ranges of a parallel scan run. Their workers wait for
+     * the consumer of the scan, so they should not share a pool with other storage calls.
+     *
+     * @param scanExecutor executor, the shared scan pool by default
+     */
+    public void setScanExecutor(Executor scanExecutor) {
+        this.scanExecutor = scanExecutor;
+    }
+
+    /**
+     * Set the executor on which the reads of {@link #getEntities(Collection)} run concurrently.
+     *
+     * @param readExecutor executor, the shared storage pool by default
+     */
+    public void setReadExecutor(Executor readExecutor) {
+        this.readExecutor = readExecutor;
+    }
+
+    /**
+     * Run {@link #queryAll()} and queries without PartitionKey as parallel scans over up to
+     * the given number of PartitionKey ranges. The boundaries are sampled on first use,
+     * see {@link #samplePartitionBoundaries(int)}. Results are then returned in no particular order.
+     *
+     * @param parallelScanRanges number of ranges, 0 or 1 to scan sequentially
+     */
+    public void setParallelScanRanges(int parallelScanRanges) {
+        this.parallelScanRanges = parallelScanRanges;
+        this.scanBoundaries = null;
+    }
+
+    /**
+     * Maintain a secondary table mapping RowKeys to PartitionKeys, so that
+     * {@link #getEntity(String)} takes two point reads instead of a table scan.
+     * Only writes through this service update the index; an existing table
+     * should be indexed once with {@link #rebuildRowKeyIndex()}. A RowKey the index
+     * does not lead to, e.g. after a failed index update, is looked up with a scan,
+     * which also adds the entity found to the index.
+     *
+     * @param enabled whether the index should be used and maintained
+     */
+    public void setRowKeyIndexEnabled(boolean enabled) {
+        this.rowKeyIndex = enabled ? new RowKeyIndex(tableName + ROW_KEY_INDEX_SUFFIX, tableExecutor) : null;
+    }
+
+    /**
+     * Create the property index of this table, see {@link PropertyIndex}.
+     * Its calls share the retries, rate limits and instrumentation of this service.
+     */
+    public PropertyIndex createPropertyIndex() {
+        return new PropertyIndex(tableName + PROPERTY_INDEX_SUFFIX, tableExecutor);
+    }
+
+    /**
+     * Add every entity of the table to the RowKey index.
+     *
+     * @throws IllegalStateException if the table could not be read to the end
+     */
+    public void rebuildRowKeyIndex() {
+        if (rowKeyIndex == null) {
+            return;
+        }
+        TableQuery<T> keysQuery = TableQuery.from(entityClass).select(new String[]{PARTITION_KEY, ROW_KEY});
+        SegmentedIterator.stream((ResultContinuation token) ->
+                        executeSegmented(null, keysQuery, (partitionKey, rowKey, timeStamp, properties, etag) -> new EntityKey(partitionKey, rowKey), token))
+                .forEach(key -> rowKeyIndex.add(key.getPartitionKey(), key.getRowKey()));
     }
 
     @Override
@@ -84,7 +288,9 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
             TableOperation insertCustomer = TableOperation.insertOrReplace(entity);
 
             // Submit the operation to the table service.
-            cloudTable.execute(insertCustomer);
+            execute(entity.getPartitionKey(), insertCustomer);
+            afterWrite(entity.getPartitionKey());
+            indexRowKey(entity.getPartitionKey(), entity.getRowKey());
 
             return true;
         } catch (Exception e) {
@@ -101,7 +307,9 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
             TableOperation insertCustomer = TableOperation.insertOrMerge(entity);
 
             // Submit the operation to the table service.
-            cloudTable.execute(insertCustomer);
+            execute(entity.getPartitionKey(), insertCustomer);
+            afterWrite(entity.getPartitionKey());
+            indexRowKey(entity.getPartitionKey(), entity.getRowKey());
 
             return true;
         } catch (Exception e) {
@@ -111,67 +319,130 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
         }
     }
 
+    /**
+     * Insert or replace entities with as few batch operations as possible.
+     * Entities are grouped by PartitionKey and split into chunks that fit the
+     * batch limits, which are submitted concurrently on the batch executor.
+     * An entity given several times is written once per occurrence, in order.
+     *
+     * @param entities entities to write, may span several partitions
+     * @return outcome of every entity
+     */
     @Override
-    public boolean insertOrReplaceBatch(List<T> entities) {
-        try {
-            TableBatchOperation batchOperation = new TableBatchOperation();
+    public BatchResult<T> insertOrReplaceBatch(List<T> entities) {
+        return executeBatches(entities, TableBatchOperation::insertOrReplace);
+    }
 
-            entities.forEach(batchOperation::insertOrReplace);
+    /**
+     * Insert or merge entities, see {@link #insertOrReplaceBatch(List)}.
+     *
+     * @param entities entities to write, may span several partitions
+     * @return outcome of every entity
+     */
+    @Override
+    public BatchResult<T> insertOrMergeBatch(List<T> entities) {
+        return executeBatches(entities, TableBatchOperation::insertOrMerge);
+    }
 
-            // Submit the operation to the table service.
-            cloudTable.execute(batchOperation);
+    /**
+     * Insert an entity that must not exist yet.
+     *
+     * @return CREATED, or CONFLICT if the entity already exists
+     */
+    @Override
+    public int insert(T entity) {
+        int status = executeConditional(entity.getPartitionKey(), TableOperation.insert(entity), CREATED, false);
+        if (status == CREATED) {
+            afterChange(entity.getPartitionKey(), 1);
+            indexRowKey(entity.getPartitionKey(), entity.getRowKey());
+        }
+        return status;
+    }
 
-            return true;
-        } catch (Exception e) {
-            // Output the stack trace.
-            e.printStackTrace();
-            return false;
+    /**
+     * Replace an existing entity. The write only succeeds if the stored entity still
+     * has the ETag of the given entity, or unconditionally if it has no ETag.
+     *
+     * @return OK, NOT_FOUND, or PRECONDITION_FAILED if the entity has changed
+     */
+    @Override
+    public int replace(T entity) {
+        matchAnyIfNoEtag(entity);
+        int status = executeConditional(entity.getPartitionKey(), TableOperation.replace(entity), OK,
+                ETAG_ANY.equals(entity.getEtag()));
+        if (status == OK) {
+            afterChange(entity.getPartitionKey(), 0);
         }
+        return status;
     }
 
+    /**
+     * Merge into an existing entity, see {@link #replace(GenericEntity)}.
+     *
+     * @return OK, NOT_FOUND, or PRECONDITION_FAILED if the entity has changed
+     */
     @Override
-    public boolean insertOrMergeBatch(List<T> entities) {
-        try {
-            TableBatchOperation batchOperation = new TableBatchOperation();
+    public int merge(T entity) {
+        matchAnyIfNoEtag(entity);
+        int status = executeConditional(entity.getPartitionKey(), TableOperation.merge(entity), OK,
+                ETAG_ANY.equals(entity.getEtag()));
+        if (status == OK) {
+            afterChange(entity.getPartitionKey(), 0);
+        }
+        return status;
+    }
 
-            entities.forEach(batchOperation::insertOrMerge);
+    /**
+     * Merge the given properties into an existing entity, leaving its other properties untouched.
+     *
+     * @param etag       ETag the stored entity must have, or null to merge unconditionally
+     * @param properties properties to set
+     * @return OK, NOT_FOUND, or PRECONDITION_FAILED if the entity has changed
+     */
+    @Override
+    public int merge(String partitionKey, String rowKey, String etag, Map<String, EntityProperty> properties) {
+        DynamicTableEntity changes = new DynamicTableEntity(partitionKey, rowKey,
+                etag != null ? etag : ETAG_ANY, new HashMap<>(properties));
 
-            // Submit the operation to the table service.
-            cloudTable.execute(batchOperation);
+        int status = executeConditional(partitionKey, TableOperation.merge(changes), OK, ETAG_ANY.equals(changes.getEtag()));
+        if (status == OK) {
+            afterChange(partitionKey, 0);
+        }
+        return status;
+    }
 
-            return true;
-        } catch (Exception e) {
-            // Output the stack trace.
-            e.printStackTrace();
-            return false;
+    /**
+     * Delete an entity in a single round trip.
+     *
+     * @param etag ETag the stored entity must have, or null to delete it unconditionally
+     * @return OK, NOT_FOUND, or PRECONDITION_FAILED if the entity has changed
+     */
+    @Override
+    public int delete(String partitionKey, String rowKey, String etag) {
+        DynamicTableEntity toDeleteEntity = new DynamicTableEntity(partitionKey, rowKey);
+        toDeleteEntity.setEtag(etag != null ? etag : ETAG_ANY);
+
+        // A repeated delete would find nothing to delete
+        int status = executeConditional(partitionKey, TableOperation.delete(toDeleteEntity), OK, false);
+        if (status == OK) {
+            afterChange(partitionKey, -1);
+            if (rowKeyIndex != null) {
+                rowKeyIndex.remove(partitionKey, rowKey);
+            }
         }
+        return status;
     }
 
+    /**
+     * Delete an entity regardless of its ETag.
+     *
+     * @return the given entity, or null if it could not be deleted
+     */
     @Override
     public T delete(T entity) {
-        try
-        {
-            // Create an operation to retrieve the entity with partition key of "Smith" and row key of "Jeff".
-            TableOperation retrieveOperation = TableOperation.retrieve(entity.getPartitionKey(), entity.getRowKey(), entityClass);
-
-            // Retrieve the entity with partition key of "Smith" and row key of "Jeff".
-            T toDeleteEntity =
-                    cloudTable.execute(retrieveOperation).getResultAsType();
-
-            // Create an operation to delete the entity.
-            TableOperation deleteOperation = TableOperation.delete(toDeleteEntity);
-
-            // Submit the delete operation to the table service.
-            cloudTable.execute(deleteOperation);
-
-            return toDeleteEntity;
-        }
-        catch (Exception e)
-        {
-            // Output the stack trace.
-            e.printStackTrace();
-            return null;
-        }
+        return delete(entity.getPartitionKey(), entity.getRowKey(), null) == OK
+                ? entity
+                : null;
     }
 
     @Override
@@ -194,11 +465,7 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
             return null;
         }
         try {
-            // Create an operation to retrieve the entity with partition key and row key
-            TableOperation retrieveOperation = TableOperation.retrieve(partitionKey, rowKey, entityClass);
-
-            // Retrieve the entity with partition key and row key
-            return cloudTable.execute(retrieveOperation).getResultAsType();
+            return retrieve(partitionKey, rowKey);
         } catch (Exception e) {
             // Output the stack trace.
             e.printStackTrace();
@@ -206,6 +473,88 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
         }
     }
 
+    /**
+     * Point read that fails on errors, unlike {@link #getEntity(String, String)}.
+     *
+     * @return entity, or null only if it does not exist
+     */
+    private T retrieve(String partitionKey, String rowKey) throws Exception {
+        // Create an operation to retrieve the entity with partition key and row key
+        TableOperation retrieveOperation = TableOperation.retrieve(partitionKey, rowKey, entityClass);
+
+        // Retrieve the entity with partition key and row key
+        if (hedgeDelayMillis > 0) {
+            return hedged(() -> execute(partitionKey, retrieveOperation).getResultAsType());
+        }
+        return execute(partitionKey, retrieveOperation).getResultAsType();
+    }
+
+    /**
+     * Get several entities at once. Keys are deduplicated and grouped by partition.
+     * Small groups are read with concurrent point reads, larger ones with
+     * concurrent partition queries matching up to {@code MAX_FILTER_ROW_KEYS} RowKeys each.
+     *
+     * @param keys keys of the entities
+     * @return found entities by key, only entities known to be missing are absent
+     * @throws IllegalStateException if a read failed
+     */
+    @Override
+    public Map<EntityKey, T> getEntities(Collection<EntityKey> keys) {
+        Map<String, List<String>> partitions = new LinkedHashMap<>();
+        for (EntityKey key : new LinkedHashSet<>(keys)) {
+            if (key != null && key.getPartitionKey() != null && key.getRowKey() != null) {
+                partitions.computeIfAbsent(key.getPartitionKey(), pk -> new ArrayList<>()).add(key.getRowKey());
+            }
+        }
+
+        Map<EntityKey, T> entities = new ConcurrentHashMap<>();
+        List<Runnable> reads = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> partition : partitions.entrySet()) {
+            String partitionKey = partition.getKey();
+            List<String> rowKeys = partition.getValue();
+
+            if (rowKeys.size() <= MAX_POINT_READS_PER_PARTITION) {
+                for (String rowKey : rowKeys) {
+                    reads.add(() -> {
+                        T entity;
+                        try {
+                            entity = retrieve(partitionKey, rowKey);
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Cannot read entity " + partitionKey + "/" + rowKey, e);
+                        }
+                        if (entity != null) {
+                            entities.put(new EntityKey(partitionKey, rowKey), entity);
+                        }
+                    });
+                }
+            } else {
+                for (int i = 0; i < rowKeys.size(); i += MAX_FILTER_ROW_KEYS) {
+                    List<String> chunk = rowKeys.subList(i, Math.min(i + MAX_FILTER_ROW_KEYS, rowKeys.size()));
+                    reads.add(() -> stream(partitionKey, createRowKeysQuery(partitionKey, chunk))
+                            .forEach(entity -> entities.put(new EntityKey(entity.getPartitionKey(), entity.getRowKey()), entity)));
+                }
+            }
+        }
+
+        if (reads.size() == 1) {
+            reads.get(0).run();
+        } else if (reads.size() > 1) {
+            CompletableFuture<?>[] futures = reads.stream()
+                    .map(read -> CompletableFuture.runAsync(OperationScope.propagate(read), readExecutor))
+                    .toArray(CompletableFuture<?>[]::new);
+            try {
+                CompletableFuture.allOf(futures).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        return entities;
+    }
+
     /**
      * Get an entity (only if rowKeys are distinct!!)
      *
@@ -218,26 +567,32 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
             return null;
         }
         try {
+            if (rowKeyIndex != null) {
+                // Two point reads: the index, then the entity
+                for (String partitionKey : rowKeyIndex.partitionsOf(rowKey)) {
+                    T entity = getEntity(partitionKey, rowKey);
+                    if (entity != null) {
+                        return entity;
+                    }
+                }
+                // The index may have missed a write whose index update failed
+            }
 
-            // Prepare partitionKey filter
+            // Prepare rowKey filter
             String rowKeyFilter = QueryUtils.getEqualFilter(ROW_KEY, rowKey);
 
-            // Specify a partition query
+            // Specify a cross-partition query, only one row is needed
             TableQuery<T> rowKeyQuery =
                     TableQuery.from(entityClass)
-                            .where(rowKeyFilter);
-
-            // Collect entities.
-            List<T> list = new ArrayList<>();
-            ResultContinuation token = null;
-
-            do {
-                ResultSegment<T> queryResult = cloudTable.executeSegmented(rowKeyQuery, token);
-                list.addAll(queryResult.getResults());
-                token = queryResult.getContinuationToken();
-            } while (token != null);
+                            .where(rowKeyFilter)
+                            .take(1);
 
-            return !list.isEmpty() ? list.get(0) : null;
+            // Stop reading segments as soon as the first match is found
+            T entity = stream(null, rowKeyQuery).findFirst().orElse(null);
+            if (entity != null) {
+                indexRowKey(entity.getPartitionKey(), rowKey);
+            }
+            return entity;
         } catch (Exception e) {
             // Output the stack trace.
             e.printStackTrace();
@@ -248,16 +603,7 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
     @Override
     public List<T> queryAll() {
         try {
-            ResultContinuation token = null;
-            List<T> list = new ArrayList<>();
-
-            do {
-                ResultSegment<T> queryResult = cloudTable.executeSegmented(TableQuery.from(entityClass), token);
-                list.addAll(queryResult.getResults());
-                token = queryResult.getContinuationToken();
-            } while (token != null);
-
-            return list;
+            return queryStream(null, null).collect(Collectors.toList());
         } catch (Exception e) {
             // Output the stack trace.
             e.printStackTrace();
@@ -267,22 +613,55 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
 
     @Override
     public List<T> query(String partitionKey, String azureFilter) {
-        try {
+        return query(partitionKey, azureFilter, ALL_COLUMNS);
+    }
 
-            // Specify a combo query
-            TableQuery<T> query = createQuery(partitionKey, azureFilter);
+    /**
+     * Query entities, only reading the given columns. PartitionKey, RowKey and
+     * Timestamp are always read; the other properties of the entities stay unset.
+     *
+     * @param columns Azure property names, none to read every property
+     */
+    @Override
+    public List<T> query(String partitionKey, String azureFilter, String... columns) {
+        try {
+            return cached(partitionKey, azureFilter, columns, 0,
+                    () -> queryStream(partitionKey, azureFilter, columns).collect(Collectors.toList()));
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
 
-            // Collect entities.
-            List<T> list = new ArrayList<>();
-            ResultContinuation token = null;
+    /**
+     * Lazily query entities. Result segments are only requested from Azure
+     * when the consumer reaches the end of the previous one. A segment that
+     * cannot be read fails the stream with an IllegalStateException.
+     *
+     * @param partitionKey partition to query, or null for the whole table
+     * @param azureFilter  additional filter, may be null
+     * @return stream of entities
+     */
+    @Override
+    public Stream<T> queryStream(String partitionKey, String azureFilter) {
+        return queryStream(partitionKey, azureFilter, ALL_COLUMNS);
+    }
 
-            do {
-                ResultSegment<T> queryResult = cloudTable.executeSegmented(query, token);
-                list.addAll(queryResult.getResults());
-                token = queryResult.getContinuationToken();
-            } while (token != null);
+    private Stream<T> queryStream(String partitionKey, String azureFilter, String[] columns) {
+        if (partitionKey == null && parallelScanRanges > 1) {
+            return new ParallelScan<>(rangeQuery(azureFilter, columns), scanExecutor)
+                    .stream(getScanBoundaries(), SCAN_QUEUE_CAPACITY, SCAN_ABANDON_TIMEOUT_MILLIS);
+        }
+        return stream(partitionKey, createQuery(partitionKey, azureFilter, columns));
+    }
 
-            return list;
+    @Override
+    public List<T> query(Filter filter) {
+        try {
+            // Cached under the partition fixed by the filter, if any
+            return cached(KeyRange.of(filter).getPartitionKey(), filter != null ? filter.toString() : null, ALL_COLUMNS, 0,
+                    () -> queryStream(filter).collect(Collectors.toList()));
         } catch (Exception e) {
             // Output the stack trace.
             e.printStackTrace();
@@ -290,54 +669,166 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
         }
     }
 
+    /**
+     * Lazily query the entities matching a typed filter. The key predicates joined
+     * by and at the top of the filter choose how the table is read: a filter fixing
+     * only both keys is a point read, and a PartitionKey range limits a parallel scan
+     * to the scan ranges overlapping it.
+     *
+     * @param filter filter, or null for the whole table
+     * @return stream of entities
+     */
     @Override
-    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter) {
-        try {
+    public Stream<T> queryStream(Filter filter) {
+        KeyRange keyRange = KeyRange.of(filter);
+        String azureFilter = filter != null ? filter.toString() : null;
 
-            // Specify a combo query
-            TableQuery<T> query = createQuery(partitionKey, azureFilter);
+        if (!keyRange.isSatisfiable()) {
+            return Stream.empty();
+        }
+        if (keyRange.isPointRead()) {
+            T entity;
+            try {
+                entity = retrieve(keyRange.getPartitionKey(), keyRange.getRowKey());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot read entity " + keyRange.getPartitionKey() + "/" + keyRange.getRowKey(), e);
+            }
+            return entity != null ? Stream.of(entity) : Stream.empty();
+        }
+        if (keyRange.getPartitionKey() == null && parallelScanRanges > 1) {
+            // Ranges past the key bounds would only return empty segments
+            List<String> boundaries = getScanBoundaries().stream()
+                    .filter(boundary -> keyRange.containsPartition(boundary))
+                    .collect(Collectors.toList());
+            return new ParallelScan<>(rangeQuery(azureFilter, ALL_COLUMNS), scanExecutor)
+                    .stream(boundaries, SCAN_QUEUE_CAPACITY, SCAN_ABANDON_TIMEOUT_MILLIS);
+        }
+        return stream(keyRange.getPartitionKey(), createQuery(null, azureFilter));
+    }
 
-            // Collect entities.
-            List<T> list = new ArrayList<>();
-            ResultContinuation token = null;
+    /**
+     * Scan the table over the PartitionKey ranges delimited by the given boundaries at the same time,
+     * on the scan executor, and merge the entities into one stream in no particular order.
+     * A stream that is not consumed to the end should be closed to stop the scan; otherwise
+     * it stops after SCAN_ABANDON_TIMEOUT_MILLIS without progress. A failed range fails the stream.
+     *
+     * @param azureFilter filter, may be null
+     * @param boundaries  PartitionKeys at which ranges start, or null to sample them
+     * @return stream of entities
+     */
+    public Stream<T> parallelScan(String azureFilter, List<String> boundaries) {
+        if (boundaries == null) {
+            boundaries = samplePartitionBoundaries(Math.max(parallelScanRanges, SCAN_DEFAULT_RANGES));
+        }
+        return new ParallelScan<>(rangeQuery(azureFilter, ALL_COLUMNS), scanExecutor)
+                .stream(boundaries, SCAN_QUEUE_CAPACITY, SCAN_ABANDON_TIMEOUT_MILLIS);
+    }
 
-            do {
-                ResultSegment<T> queryResult = cloudTable.executeSegmented(query, token);
-                list.addAll(queryResult.getResults());
-                token = queryResult.getContinuationToken();
-            } while (token != null);
+    /**
+     * Scan the table like {@link #parallelScan(String, List)}, passing the entities to a sink.
+     * The sink is called from several threads at the same time.
+     *
+     * @param azureFilter filter, may be null
+     * @param boundaries  PartitionKeys at which ranges start, or null to sample them
+     * @param sink        thread-safe consumer of the entities
+     */
+    public void parallelScan(String azureFilter, List<String> boundaries, Consumer<? super T> sink) {
+        if (boundaries == null) {
+            boundaries = samplePartitionBoundaries(Math.max(parallelScanRanges, SCAN_DEFAULT_RANGES));
+        }
+        new ParallelScan<>(rangeQuery(azureFilter, ALL_COLUMNS), scanExecutor)
+                .scan(boundaries, sink);
+    }
 
-            // Extract entities by pages
-            List<T> rows = new LinkedList<>();
-            int startIndex = (currentPage - 1) * rowCount;
-            int endIndex = currentPage * rowCount - 1;
+    /**
+     * Find PartitionKeys that split the table into ranges. For each character of
+     * {@code SCAN_PROBE_CHARACTERS}, the first PartitionKey at or after it is read,
+     * using one single-row, keys-only query per character run concurrently.
+     *
+     * @param maxRanges maximum number of ranges
+     * @return at most maxRanges - 1 distinct, sorted PartitionKeys
+     */
+    public List<String> samplePartitionBoundaries(int maxRanges) {
+        List<CompletableFuture<String>> probes = new ArrayList<>();
+        for (char c : SCAN_PROBE_CHARACTERS.toCharArray()) {
+            probes.add(CompletableFuture.supplyAsync(() -> firstPartitionKeyFrom(String.valueOf(c)), scanExecutor));
+        }
 
-            if (startIndex > list.size() - 1) {
-                // last index = 5
-                int lastPage = list.size() / rowCount;
-                if (list.size() % rowCount == 0) {
-                    lastPage--;
-                }
+        List<String> keys = new ArrayList<>(new TreeSet<>(probes.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())));
 
-                startIndex = lastPage * rowCount;
+        // The first key starts the first range anyway
+        if (!keys.isEmpty()) {
+            keys.remove(0);
+        }
 
-                for (int i = startIndex; i < list.size(); i++) {
-                    rows.add(list.get(i));
-                }
+        // Keep evenly spread keys
+        int count = Math.min(keys.size(), Math.max(maxRanges - 1, 0));
+        List<String> boundaries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boundaries.add(keys.get((int) ((long) i * keys.size() / count)));
+        }
+        return boundaries;
+    }
+
+    /**
+     * Get a page of entities by its position.
+     *
+     * Without page index, every matching entity is read once to count the total.
+     * With page index enabled, the query resumes from the closest known page boundary,
+     * skips the remaining pages with a keys-only projection and stops after the requested page.
+     * The total is then a lower bound: rows up to the returned page, plus one if more rows follow.
+     */
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter) {
+        return queryPage(rowCount, currentPage, partitionKey, azureFilter, ALL_COLUMNS);
+    }
+
+    /**
+     * Get a page of entities by its position, only reading the given columns.
+     *
+     * @param columns Azure property names, none to read every property
+     */
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, int currentPage, String partitionKey, String azureFilter, String... columns) {
+        if (rowCount <= 0) {
+            return new BootgridResponse<>(0, 0, 0, Collections.emptyList());
+        }
+
+        if (pageIndex != null) {
+            return seekPage(rowCount, Math.max(currentPage, 1), partitionKey, azureFilter, columns);
+        }
+
+        // Keep only the rows of the requested page, or of the last page
+        // reached if the requested one is out of range.
+        int targetPage = Math.max(currentPage, 1) - 1;
+        int lastPage = -1;
+        int total = 0;
+        List<T> rows = new ArrayList<>(rowCount);
 
-                // Update the page number (last page is calculated in programming index)
-                currentPage = lastPage + 1;
-            } else if (endIndex > list.size() - 1) {
-                for (int i = startIndex; i < list.size(); i++) {
-                    rows.add(list.get(i));
+        try {
+            // Pages need the sequential order
+            Iterator<T> iterator = stream(partitionKey, createQuery(partitionKey, azureFilter, columns)).iterator();
+            while (iterator.hasNext()) {
+                T entity = iterator.next();
+                int page = total / rowCount;
+                total++;
+
+                if (page > targetPage) {
+                    continue;
                 }
-            } else {
-                for (int i = startIndex; i <= endIndex; i++) {
-                    rows.add(list.get(i));
+                if (page != lastPage) {
+                    rows.clear();
+                    lastPage = page;
                 }
+                rows.add(entity);
             }
 
-            return new BootgridResponse<>(currentPage, rowCount, list.size(), rows);
+            return new BootgridResponse<>(lastPage + 1, rowCount, total, rows);
         } catch (Exception e) {
             // Output the stack trace.
             e.printStackTrace();
@@ -345,36 +836,88 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
         }
     }
 
+    /**
+     * Get the page of entities starting at the given cursor.
+     *
+     * The total is not known in this mode and is returned as -1.
+     *
+     * @param rowCount     page size
+     * @param cursor       cursor returned with the previous page, or null for the first page
+     * @param partitionKey partition to query, or null for the whole table
+     * @param azureFilter  additional filter, may be null
+     * @return page with the cursor of the next page, which is null on the last page
+     */
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter) {
+        return queryPage(rowCount, cursor, partitionKey, azureFilter, ALL_COLUMNS);
+    }
+
+    /**
+     * Get the page of entities starting at the given cursor, only reading the given columns.
+     *
+     * @param columns Azure property names, none to read every property
+     */
+    @Override
+    public BootgridResponse<T> queryPage(int rowCount, String cursor, String partitionKey, String azureFilter, String... columns) {
+        if (rowCount <= 0) {
+            return new BootgridResponse<>(0, 0, -1, Collections.emptyList());
+        }
+        try {
+            TableQuery<T> query = createQuery(partitionKey, azureFilter, columns);
+
+            List<T> rows = new ArrayList<>(rowCount);
+            ResultContinuation next = readPage(query,
+                    token -> executeSegmented(partitionKey, query, token),
+                    ContinuationUtils.deserialize(cursor), rowCount, rows);
+
+            return new BootgridResponse<>(0, rowCount, -1, rows, ContinuationUtils.serialize(next));
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return new BootgridResponse<>(0, 0, -1, Collections.emptyList());
+        }
+    }
+
     @Override
     public List<T> queryTop(int count, String partitionKey, String azureFilter) {
+        return queryTop(count, partitionKey, azureFilter, ALL_COLUMNS);
+    }
+
+    /**
+     * Get the first entities of a query, only reading the given columns.
+     *
+     * @param columns Azure property names, none to read every property
+     */
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter, String... columns) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        return cached(partitionKey, azureFilter, columns, count,
+                () -> fetchTop(count, partitionKey, azureFilter, columns));
+    }
+
+    private List<T> fetchTop(int count, String partitionKey, String azureFilter, String[] columns) {
         List<T> list = new ArrayList<>();
 
         // Create TableQuery object
-        TableQuery<T> query = createQuery(partitionKey, azureFilter);
+        TableQuery<T> query = createQuery(partitionKey, azureFilter, columns);
 
         try {
-            if (count <= 0) {
-                return list;
-            } else if (count <= MAX_QUERY_COUNT) {
-                query = query.take(count);
-                cloudTable.execute(query).forEach(list::add);
+            ResultContinuation token = null;
 
-            } else {
-                ResultContinuation token = null;
-
-                do {
-                    ResultSegment<T> queryResult = cloudTable.executeSegmented(query, token);
-                    list.addAll(queryResult.getResults());
-                    token = queryResult.getContinuationToken();
-                    count -= MAX_QUERY_COUNT;
-                } while (count > MAX_QUERY_COUNT && token != null);
-
-                if (token != null) {
-                    query = query.take(count);
-                    ResultSegment<T> queryResult = cloudTable.executeSegmented(query, token);
-                    list.addAll(queryResult.getResults());
+            // Only ask each segment for the rows still missing
+            do {
+                query.take(Math.min(count - list.size(), MAX_QUERY_COUNT));
+                ResultSegment<T> queryResult = executeSegmented(partitionKey, query, token);
+                for (T entity : queryResult.getResults()) {
+                    if (list.size() < count) {
+                        list.add(entity);
+                    }
                 }
-            }
+                token = queryResult.getContinuationToken();
+            } while (list.size() < count && token != null);
+
             return list;
         } catch (Exception e) {
             // Output the stack trace.
@@ -383,23 +926,101 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
         }
     }
 
+    /**
+     * Get the first entities ordered by a property, e.g. the 50 latest ones.
+     * The scan only transfers the keys and the ordering property, keeping the best
+     * candidates in a heap of the given size; the full entities are read at the end.
+     *
+     * @param property   Azure column to order by, entities without it come last
+     * @param descending true to start from the largest values
+     */
+    @Override
+    public List<T> queryTop(int count, String partitionKey, String azureFilter, String property, boolean descending) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+
+        Comparator<TopCandidate> order = TopCandidate.order(descending);
+
+        // Worst candidate on top, so it can be replaced by a better one
+        PriorityQueue<TopCandidate> heap = new PriorityQueue<>(Math.min(count, MAX_QUERY_COUNT) + 1, order.reversed());
+
+        try {
+            TableQuery<T> keysQuery = createQuery(partitionKey, azureFilter).select(new String[]{PARTITION_KEY, ROW_KEY, property});
+            EntityResolver<TopCandidate> resolver = (pk, rk, timeStamp, properties, etag) ->
+                    new TopCandidate(new EntityKey(pk, rk), properties.get(property));
+
+            SegmentedIterator.stream((ResultContinuation token) -> executeSegmented(partitionKey, keysQuery, resolver, token))
+                    .forEach(candidate -> {
+                        if (heap.size() < count) {
+                            heap.add(candidate);
+                        } else if (order.compare(candidate, heap.peek()) < 0) {
+                            heap.poll();
+                            heap.add(candidate);
+                        }
+                    });
+
+            List<TopCandidate> candidates = new ArrayList<>(heap);
+            candidates.sort(order);
+
+            List<EntityKey> keys = candidates.stream().map(candidate -> candidate.key).collect(Collectors.toList());
+            Map<EntityKey, T> entities = getEntities(keys);
+
+            // Entities deleted since the scan are skipped
+            return keys.stream()
+                    .map(entities::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
     @Override
     public int count() {
+        return count(null, null);
+    }
+
+    /**
+     * Count entities without deserializing them. Only the PartitionKey is
+     * transferred and each segment just adds its length to the counter.
+     *
+     * @param partitionKey partition to count, or null for the whole table
+     * @param azureFilter  additional filter, may be null
+     * @return number of matching entities
+     */
+    @Override
+    public int count(String partitionKey, String azureFilter) {
+        long generation = 0;
+        if (countCache != null) {
+            Integer cached = countCache.get(partitionKey, azureFilter);
+            tableExecutor.getInstrumentation().cacheAccess(tableName, "count", cached != null);
+            if (cached != null) {
+                return cached;
+            }
+            generation = countCache.generation();
+        }
+
         try {
-            String column[] = {PARTITION_KEY};
-            TableQuery<T> query = TableQuery.from(entityClass)
-                    .select(column);
+            TableQuery<T> query = createQuery(partitionKey, azureFilter)
+                    .select(new String[]{PARTITION_KEY});
 
             ResultContinuation token = null;
-            List<T> list = new ArrayList<>();
+            int count = 0;
 
             do {
-                ResultSegment<T> queryResult = cloudTable.executeSegmented(query, token);
-                list.addAll(queryResult.getResults());
+                ResultSegment<Boolean> queryResult = executeSegmented(partitionKey, query, KEY_RESOLVER, token);
+                count += queryResult.getLength();
                 token = queryResult.getContinuationToken();
             } while (token != null);
 
-            return list.size();
+            if (countCache != null) {
+                countCache.put(partitionKey, azureFilter, count, generation);
+            }
+
+            return count;
         } catch (Exception e) {
             // Output the stack trace.
             e.printStackTrace();
@@ -407,7 +1028,356 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
         }
     }
 
-    private TableQuery<T> createQuery(String partitionKey, String azureFilter) {
+    private BootgridResponse<T> seekPage(int rowCount, int targetPage, String partitionKey, String azureFilter, String[] columns) {
+        try {
+            // Resume from the closest known page boundary
+            Map.Entry<Integer, String> floor = pageIndex.floor(rowCount, partitionKey, azureFilter, targetPage);
+            int page = floor.getKey();
+            ResultContinuation start = ContinuationUtils.deserialize(floor.getValue());
+
+            // Skip the pages in between, only transferring their keys
+            TableQuery<T> keysQuery = createQuery(partitionKey, azureFilter).select(new String[]{PARTITION_KEY, ROW_KEY});
+            List<Boolean> skipped = new ArrayList<>(rowCount);
+
+            while (page < targetPage) {
+                skipped.clear();
+                ResultContinuation next = readPage(keysQuery,
+                        token -> executeSegmented(partitionKey, keysQuery, KEY_RESOLVER, token),
+                        start, rowCount, skipped);
+                if (next == null) {
+                    // Current page is the last one
+                    break;
+                }
+                page++;
+                start = next;
+                pageIndex.put(rowCount, partitionKey, azureFilter, page, ContinuationUtils.serialize(start));
+            }
+
+            // Read the requested page
+            TableQuery<T> query = createQuery(partitionKey, azureFilter, columns);
+            List<T> rows = new ArrayList<>(rowCount);
+            ResultContinuation next = readPage(query,
+                    token -> executeSegmented(partitionKey, query, token),
+                    start, rowCount, rows);
+
+            // The previous page ended exactly at the end of the table
+            if (rows.isEmpty() && page > 1) {
+                pageIndex.remove(rowCount, partitionKey, azureFilter, page);
+                page--;
+                start = ContinuationUtils.deserialize(pageIndex.get(rowCount, partitionKey, azureFilter, page));
+                if (page == 1 || start != null) {
+                    next = readPage(query, token -> executeSegmented(partitionKey, query, token), start, rowCount, rows);
+                }
+            }
+
+            if (next != null) {
+                pageIndex.put(rowCount, partitionKey, azureFilter, page + 1, ContinuationUtils.serialize(next));
+            }
+
+            int total = (page - 1) * rowCount + rows.size() + (next != null ? 1 : 0);
+            return new BootgridResponse<>(total > 0 ? page : 0, rowCount, total, rows, ContinuationUtils.serialize(next));
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return new BootgridResponse<>(0, 0, 0, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Read up to rowCount rows starting at the given token, asking Azure
+     * only for the rows still missing on each segment.
+     *
+     * @return continuation token following the last row read, or null at the end
+     */
+    private <R> ResultContinuation readPage(TableQuery<T> query, SegmentedIterator.SegmentFetcher<R> fetcher,
+                                            ResultContinuation token, int rowCount, List<R> rows) throws StorageException {
+        do {
+            query.take(Math.min(rowCount - rows.size(), MAX_QUERY_COUNT));
+            ResultSegment<R> queryResult = fetcher.fetch(token);
+            rows.addAll(queryResult.getResults());
+            token = queryResult.getContinuationToken();
+        } while (token != null && rows.size() < rowCount);
+
+        return token;
+    }
+
+    private BatchResult<T> executeBatches(List<T> entities, BiConsumer<TableBatchOperation, T> operation) {
+        BatchResult<T> result = new BatchResult<>();
+
+        // Rounds are written one after the other, so repeated keys keep their order
+        for (List<T> round : splitRounds(entities)) {
+            List<List<T>> chunks = splitBatches(round);
+
+            if (chunks.size() == 1) {
+                executeBatch(chunks.get(0), operation, result);
+            } else if (chunks.size() > 1) {
+                CompletableFuture<?>[] futures = chunks.stream()
+                        .map(chunk -> CompletableFuture.runAsync(OperationScope.propagate(() -> executeBatch(chunk, operation, result)), batchExecutor))
+                        .toArray(CompletableFuture<?>[]::new);
+                CompletableFuture.allOf(futures).join();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Split entities so that each key appears at most once per round, since Azure rejects
+     * a changeset holding the same entity twice. The n-th write of a key goes to the n-th round.
+     */
+    private List<List<T>> splitRounds(List<T> entities) {
+        List<List<T>> rounds = new ArrayList<>();
+        Map<EntityKey, Integer> occurrences = new HashMap<>();
+        for (T entity : entities) {
+            int round = occurrences.merge(new EntityKey(entity.getPartitionKey(), entity.getRowKey()), 0,
+                    (previous, ignored) -> previous + 1);
+            if (round == rounds.size()) {
+                rounds.add(new ArrayList<>());
+            }
+            rounds.get(round).add(entity);
+        }
+        return rounds;
+    }
+
+    private void executeBatch(List<T> chunk, BiConsumer<TableBatchOperation, T> operation, BatchResult<T> result) {
+        try {
+            TableBatchOperation batchOperation = new TableBatchOperation();
+            chunk.forEach(entity -> operation.accept(batchOperation, entity));
+
+            // Submit the operation to the table service.
+            String partitionKey = chunk.get(0).getPartitionKey();
+            List<TableResult> tableResults = tableExecutor.execute("batch", partitionKey,
+                    (options, context) -> cloudTable.execute(batchOperation, options, context));
+            afterWrite(partitionKey);
+
+            for (int i = 0; i < chunk.size(); i++) {
+                result.add(chunk.get(i), tableResults.get(i).getHttpStatusCode(), null);
+                indexRowKey(chunk.get(i).getPartitionKey(), chunk.get(i).getRowKey());
+            }
+        } catch (StorageException e) {
+            // A batch is atomic, none of its entities has been written
+            e.printStackTrace();
+            chunk.forEach(entity -> result.add(entity, e.getHttpStatusCode(), e));
+        } catch (Exception e) {
+            e.printStackTrace();
+            chunk.forEach(entity -> result.add(entity, INTERNAL_SERVER_ERROR, e));
+        }
+    }
+
+    /**
+     * Group entities by PartitionKey, then split each group into chunks of at most
+     * {@code MAX_BATCH_SIZE} operations and {@code MAX_BATCH_PAYLOAD} estimated bytes.
+     */
+    private List<List<T>> splitBatches(List<T> entities) {
+        Map<String, List<T>> partitions = new LinkedHashMap<>();
+        for (T entity : entities) {
+            partitions.computeIfAbsent(entity.getPartitionKey(), key -> new ArrayList<>()).add(entity);
+        }
+
+        List<List<T>> chunks = new ArrayList<>();
+        for (List<T> partition : partitions.values()) {
+            List<T> chunk = new ArrayList<>();
+            long chunkSize = 0;
+
+            for (T entity : partition) {
+                // Request line and headers of the operation inside the changeset
+                long entitySize = 512 + EntityUtils.estimateSize(entity);
+                if (!chunk.isEmpty() && (chunk.size() == MAX_BATCH_SIZE || chunkSize + entitySize > MAX_BATCH_PAYLOAD)) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                    chunkSize = 0;
+                }
+                chunk.add(entity);
+                chunkSize += entitySize;
+            }
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    private void indexRowKey(String partitionKey, String rowKey) {
+        if (rowKeyIndex != null) {
+            rowKeyIndex.add(partitionKey, rowKey);
+        }
+    }
+
+    /**
+     * Serve a query from the query cache when enabled.
+     *
+     * @param limit maximum number of rows of the query, 0 if unlimited
+     */
+    private List<T> cached(String partitionKey, String azureFilter, String[] columns, int limit, Supplier<List<T>> query) {
+        if (queryCache == null) {
+            return query.get();
+        }
+
+        // Same normalized filter as the query sent to Azure, projections are cached apart
+        String filter = createQuery(partitionKey, azureFilter).getFilterString();
+        if (columns != null && columns.length > 0) {
+            filter = Objects.toString(filter, "") + " $select=" + String.join(",", columns);
+        }
+
+        List<T> rows = queryCache.get(partitionKey, filter, limit);
+        tableExecutor.getInstrumentation().cacheAccess(tableName, "query", rows != null);
+        if (rows == null) {
+            long generation = queryCache.generation();
+            rows = query.get();
+            queryCache.put(partitionKey, filter, limit, rows, generation);
+        }
+        return rows;
+    }
+
+    private void afterWrite(String partitionKey) {
+        if (queryCache != null) {
+            queryCache.invalidate(partitionKey);
+        }
+        if (pageIndex != null) {
+            pageIndex.invalidate(partitionKey);
+        }
+        if (countCache != null) {
+            countCache.invalidate(partitionKey);
+        }
+    }
+
+    /**
+     * Update caches after a write whose effect on the number of rows is known.
+     */
+    private void afterChange(String partitionKey, int rowDelta) {
+        if (queryCache != null) {
+            queryCache.invalidate(partitionKey);
+        }
+        if (pageIndex != null) {
+            pageIndex.invalidate(partitionKey);
+        }
+        if (countCache != null) {
+            countCache.adjust(partitionKey, rowDelta);
+        }
+    }
+
+    /**
+     * Execute an operation relying on Azure's conditional semantics.
+     *
+     * @param idempotent whether the operation can be repeated after it has been applied,
+     *                   which does not hold for inserts, deletes and ETag conditions
+     * @return successCode, or the HTTP status of the failure
+     */
+    private int executeConditional(String partitionKey, TableOperation operation, int successCode, boolean idempotent) {
+        try {
+            // Submit the operation to the table service.
+            tableExecutor.execute("execute", partitionKey, idempotent,
+                    (options, context) -> cloudTable.execute(operation, options, context));
+            return successCode;
+        } catch (StorageException e) {
+            int status = e.getHttpStatusCode();
+            if (status == NOT_FOUND || status == CONFLICT || status == PRECONDITION_FAILED) {
+                return status;
+            }
+            // Output the stack trace.
+            e.printStackTrace();
+            return status > 0 ? status : INTERNAL_SERVER_ERROR;
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return INTERNAL_SERVER_ERROR;
+        }
+    }
+
+    private void matchAnyIfNoEtag(T entity) {
+        if (entity.getEtag() == null) {
+            entity.setEtag(ETAG_ANY);
+        }
+    }
+
+    private List<String> getScanBoundaries() {
+        List<String> boundaries = scanBoundaries;
+        if (boundaries == null) {
+            boundaries = samplePartitionBoundaries(parallelScanRanges);
+            scanBoundaries = boundaries;
+        }
+        return boundaries;
+    }
+
+    private String firstPartitionKeyFrom(String lowerBound) {
+        TableQuery<T> query = TableQuery.from(entityClass)
+                .where(TableQuery.generateFilterCondition(PARTITION_KEY, TableQuery.QueryComparisons.GREATER_THAN_OR_EQUAL, lowerBound))
+                .select(new String[]{PARTITION_KEY})
+                .take(1);
+
+        return SegmentedIterator.stream((ResultContinuation token) ->
+                        executeSegmented(null, query, (partitionKey, rowKey, timeStamp, properties, etag) -> partitionKey, token))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private TableQuery<T> createRowKeysQuery(String partitionKey, List<String> rowKeys) {
+        return createQuery(partitionKey, Filter.in(ROW_KEY, rowKeys).toString());
+    }
+
+    private BiFunction<String, String, Stream<T>> rangeQuery(String azureFilter, String[] columns) {
+        return (lowerBound, upperBound) -> {
+            Filter keyRange = Filter.range(PARTITION_KEY, lowerBound, upperBound);
+
+            String filter = QueryUtils.combineFilters(keyRange != null ? keyRange.toString() : null, azureFilter);
+            TableQuery<T> query = TableQuery.from(entityClass);
+            if (filter != null) {
+                query.where(filter);
+            }
+            if (columns != null && columns.length > 0) {
+                query.select(columns);
+            }
+            return stream(null, query);
+        };
+    }
+
+    private Stream<T> stream(String partitionKey, TableQuery<T> query) {
+        return SegmentedIterator.stream(token -> executeSegmented(partitionKey, query, token));
+    }
+
+    private TableResult execute(String partitionKey, TableOperation operation) throws StorageException {
+        return tableExecutor.execute("execute", partitionKey,
+                (options, context) -> cloudTable.execute(operation, options, context));
+    }
+
+    private ResultSegment<T> executeSegmented(String partitionKey, TableQuery<T> query, ResultContinuation token) throws StorageException {
+        return tableExecutor.execute("segment", partitionKey,
+                (options, context) -> cloudTable.executeSegmented(query, token, options, context));
+    }
+
+    private <R> ResultSegment<R> executeSegmented(String partitionKey, TableQuery<?> query, EntityResolver<R> resolver,
+                                                  ResultContinuation token) throws StorageException {
+        return tableExecutor.execute("segment", partitionKey,
+                (options, context) -> cloudTable.executeSegmented(query, resolver, token, options, context));
+    }
+
+    /**
+     * Run a read, and run it a second time if the first one has not answered
+     * within the hedge delay. The first answer wins; it fails only if both do.
+     */
+    private T hedged(Callable<T> read) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+
+        Runnable attempt = OperationScope.propagate(() -> {
+            try {
+                result.complete(read.call());
+            } catch (Exception e) {
+                if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        hedgeExecutor.execute(attempt);
+        try {
+            return result.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            hedgeExecutor.execute(attempt);
+        }
+        return result.get();
+    }
+
+    private TableQuery<T> createQuery(String partitionKey, String azureFilter, String... columns) {
 
         // Generate PartitionKey filter
         String partitionFilter = null;
@@ -424,6 +1394,43 @@ public class TableServiceImpl<T extends GenericEntity> implements TableService<T
             query.where(filter);
         }
 
+        // Project to the given columns, the keys and Timestamp are always returned
+        if (columns != null && columns.length > 0) {
+            query.select(columns);
+        }
+
         return query;
     }
+
+    private static final class TopCandidate {
+        private final EntityKey key;
+        private final EntityProperty value;
+
+        TopCandidate(EntityKey key, EntityProperty value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * Order by value, missing values last, then by keys so that ties are stable.
+         */
+        static Comparator<TopCandidate> order(boolean descending) {
+            return (a, b) -> {
+                boolean aMissing = a.value == null || a.value.getIsNull();
+                boolean bMissing = b.value == null || b.value.getIsNull();
+                if (aMissing || bMissing) {
+                    if (aMissing != bMissing) {
+                        return aMissing ? 1 : -1;
+                    }
+                } else {
+                    int result = EntityUtils.compare(a.value, b.value);
+                    if (result != 0) {
+                        return descending ? -result : result;
+                    }
+                }
+                int result = a.key.getPartitionKey().compareTo(b.key.getPartitionKey());
+                return result != 0 ? result : a.key.getRowKey().compareTo(b.key.getRowKey());
+            };
+        }
+    }
 }
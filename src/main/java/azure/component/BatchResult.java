@@ -0,0 +1,73 @@
+package azure.component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Per-entity outcome of a batch write.
+ */
+public class BatchResult<T> {
+
+    private final List<EntityResult<T>> results = Collections.synchronizedList(new ArrayList<>());
+
+    public void add(T entity, int statusCode, Exception error) {
+        results.add(new EntityResult<>(entity, statusCode, error));
+    }
+
+    public List<EntityResult<T>> getResults() {
+        synchronized (results) {
+            return new ArrayList<>(results);
+        }
+    }
+
+    public List<T> getSucceeded() {
+        return getResults().stream()
+                .filter(EntityResult::isSuccess)
+                .map(EntityResult::getEntity)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return entities that were not written and may be retried
+     */
+    public List<T> getFailed() {
+        return getResults().stream()
+                .filter(result -> !result.isSuccess())
+                .map(EntityResult::getEntity)
+                .collect(Collectors.toList());
+    }
+
+    public boolean isSuccess() {
+        return getResults().stream().allMatch(EntityResult::isSuccess);
+    }
+
+    public static class EntityResult<T> {
+        private final T entity;
+        private final int statusCode;
+        private final Exception error;
+
+        public EntityResult(T entity, int statusCode, Exception error) {
+            this.entity = entity;
+            this.statusCode = statusCode;
+            this.error = error;
+        }
+
+        public T getEntity() {
+            return entity;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null && statusCode >= 200 && statusCode < 300;
+        }
+    }
+}
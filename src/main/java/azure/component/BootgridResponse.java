@@ -7,6 +7,7 @@ public class BootgridResponse<T> {
     private int rowCount;
     private int total;
     private List<T> rows;
+    private String cursor;
 
     public BootgridResponse(int current, int rowCount, int total, List<T> rows) {
         this.current = current;
@@ -15,6 +16,11 @@ public class BootgridResponse<T> {
         this.rows = rows;
     }
 
+    public BootgridResponse(int current, int rowCount, int total, List<T> rows, String cursor) {
+        this(current, rowCount, total, rows);
+        this.cursor = cursor;
+    }
+
     public BootgridResponse() {
     }
 
@@ -49,4 +55,15 @@ public class BootgridResponse<T> {
     public void setRows(List<T> rows) {
         this.rows = rows;
     }
+
+    /**
+     * @return opaque cursor of the next page, null if this is the last page
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
@@ -0,0 +1,46 @@
+package azure.component;
+
+import java.util.Objects;
+
+/**
+ * PartitionKey and RowKey of an entity.
+ */
+public class EntityKey {
+    private final String partitionKey;
+    private final String rowKey;
+
+    public EntityKey(String partitionKey, String rowKey) {
+        this.partitionKey = partitionKey;
+        this.rowKey = rowKey;
+    }
+
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    public String getRowKey() {
+        return rowKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EntityKey)) return false;
+        EntityKey that = (EntityKey) o;
+        return Objects.equals(partitionKey, that.partitionKey)
+                && Objects.equals(rowKey, that.rowKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(partitionKey, rowKey);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityKey{" +
+                "partitionKey='" + partitionKey + '\'' +
+                ", rowKey='" + rowKey + '\'' +
+                '}';
+    }
+}
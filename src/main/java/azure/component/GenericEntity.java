@@ -1,7 +1,110 @@
 package azure.component;
 
+import azure.component.annotation.AzureCompressed;
+import azure.component.util.PropertyCodec;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.table.EntityProperty;
 import com.microsoft.azure.storage.table.TableServiceEntity;
+import util.ClassMetadata.Property;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 
 public abstract class GenericEntity<T> extends TableServiceEntity {
+
+    // Compressed property groups read but not decoded yet
+    private Map<String, byte[]> encodedGroups;
+    // Values of the compressed fields right after the read, to tell which ones were set since
+    private Map<String, Object> readValues;
+    // Set while the properties are written with pending groups, so that getters do not decode
+    private boolean writingPending;
+
     public abstract T toModel();
+
+    /**
+     * Set the {@link AzureCompressed} properties of this entity from the columns read with it.
+     * Reading an entity only keeps these columns, so that entities which are never used do not
+     * pay for decoding. The repository calls it before toModel; getters of compressed properties
+     * may call it to decode on first access. Properties set since the read keep their value.
+     */
+    public synchronized void decodeFields() {
+        if (encodedGroups == null || writingPending) {
+            return;
+        }
+        Map<String, byte[]> groups = encodedGroups;
+        Map<String, Object> values = readValues;
+        // Cleared first, so that setters calling back here return at once
+        encodedGroups = null;
+        readValues = null;
+        try {
+            HashMap<String, EntityProperty> decoded = PropertyCodec.decode(groups.values());
+            PropertyCodec.propertiesOf(getClass()).forEach((column, property) -> {
+                if (isSetSinceRead(column, property, values)) {
+                    decoded.remove(column);
+                }
+            });
+            readEntityWithReflection(this, decoded, new OperationContext());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the properties, packing the compressed ones. Groups that have not been decoded
+     * are written back as they were read, unless one of their properties has been set since.
+     */
+    @Override
+    public synchronized HashMap<String, EntityProperty> writeEntity(OperationContext opContext) throws StorageException {
+        if (encodedGroups != null) {
+            Map<String, String> groups = PropertyCodec.groupsOf(getClass());
+            boolean changed = PropertyCodec.propertiesOf(getClass()).entrySet().stream()
+                    .filter(member -> encodedGroups.containsKey(groups.get(member.getKey())))
+                    .anyMatch(member -> isSetSinceRead(member.getKey(), member.getValue(), readValues));
+            if (!changed) {
+                HashMap<String, EntityProperty> properties;
+                writingPending = true;
+                try {
+                    properties = super.writeEntity(opContext);
+                } finally {
+                    writingPending = false;
+                }
+                groups.forEach((column, group) -> {
+                    if (encodedGroups.containsKey(group)) {
+                        properties.remove(column);
+                    }
+                });
+                PropertyCodec.encode(getClass(), properties);
+                encodedGroups.forEach((group, packed) -> properties.put(group, new EntityProperty(packed)));
+                return properties;
+            }
+
+            decodeFields();
+        }
+        HashMap<String, EntityProperty> properties = super.writeEntity(opContext);
+        PropertyCodec.encode(getClass(), properties);
+        return properties;
+    }
+
+    @Override
+    public void readEntity(HashMap<String, EntityProperty> properties, OperationContext opContext) throws StorageException {
+        Map<String, byte[]> groups = PropertyCodec.extract(getClass(), properties);
+        super.readEntity(properties, opContext);
+        if (!groups.isEmpty()) {
+            synchronized (this) {
+                encodedGroups = groups;
+                readValues = new HashMap<>();
+                PropertyCodec.propertiesOf(getClass()).forEach((column, property) -> readValues.put(column, property.get(this)));
+            }
+        }
+    }
+
+    /**
+     * Compare the field itself, getters may decode. Primitive fields are never null,
+     * so a value is only set since the read if it differs from the one found after it.
+     */
+    private boolean isSetSinceRead(String column, Property property, Map<String, Object> values) {
+        return !Objects.equals(property.get(this), values.get(column));
+    }
 }
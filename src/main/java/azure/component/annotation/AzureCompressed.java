@@ -0,0 +1,20 @@
+package azure.component.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity property that is stored Deflate-compressed in a binary column
+ * together with the other properties of its group. Compressed properties cannot
+ * be used in query filters; getAll(sampleModel) compares them once the entities are read.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.FIELD })
+public @interface AzureCompressed {
+    /**
+     * @return name of the binary column holding the group, by default the column of the property alone
+     */
+    String group() default "";
+}
@@ -0,0 +1,16 @@
+package azure.component.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a model property for which the repository keeps an index table,
+ * so that getAll(sampleModel) can find models by this property without a scan.
+ * The index is only used once it has been built with rebuildPropertyIndex.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.FIELD })
+public @interface AzureIndexed {
+}
@@ -0,0 +1,20 @@
+package azure.component.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a String model property that the repository stores in blob storage
+ * when its value is larger than the threshold, keeping only a reference in the table.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = { ElementType.FIELD })
+public @interface AzureOverflow {
+    /**
+     * @return size in bytes above which the value is moved, counting two bytes per character,
+     * or 0 for the threshold of the repository
+     */
+    int threshold() default 0;
+}
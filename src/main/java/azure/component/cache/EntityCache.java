@@ -0,0 +1,154 @@
+package azure.component.cache;
+
+import azure.component.util.EntityUtils;
+import com.microsoft.azure.storage.table.TableEntity;
+
+import java.util.Objects;
+
+/**
+ * In-process cache of point reads, keyed by (table, PartitionKey, RowKey).
+ * Missing entities are cached as {@link #NOT_FOUND} with their own TTL.
+ *
+ * Cached entities are shared between readers and must not be modified.
+ * A single cache may serve several tables.
+ *
+ * Each key has a version, bumped whenever the key is stored or invalidated.
+ * A reader or writer takes the version before its call and stores its result
+ * with it; if the key has changed in between, the entry is dropped instead,
+ * so that a slow call cannot put back an older entity than a concurrent one.
+ */
+public class EntityCache {
+
+    public static final Object NOT_FOUND = new Object();
+
+    // Key and bookkeeping overhead of an entry
+    private static final long ENTRY_OVERHEAD = 128;
+    // Versions are kept per stripe of keys rather than per key
+    private static final int VERSION_STRIPES = 256;
+
+    private final LruCache<Key, Object> cache;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final long[] versions = new long[VERSION_STRIPES];
+
+    /**
+     * @param maxEntries        maximum number of cached entities, 0 for no limit
+     * @param maxBytes          maximum estimated size of cached entities, 0 for no limit
+     * @param ttlMillis         time to live of a cached entity
+     * @param negativeTtlMillis time to live of a cached missing entity, 0 to not cache them
+     */
+    public EntityCache(int maxEntries, long maxBytes, long ttlMillis, long negativeTtlMillis) {
+        this.cache = new LruCache<>(maxEntries, maxBytes, EntityCache::weigh);
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /**
+     * @return cached entity, {@link #NOT_FOUND} if known to be missing, or null if not cached
+     */
+    public Object get(String tableName, String partitionKey, String rowKey) {
+        return cache.get(new Key(tableName, partitionKey, rowKey));
+    }
+
+    /**
+     * @return version of the key, to be passed to the put following a read or write of it
+     */
+    public synchronized long version(String tableName, String partitionKey, String rowKey) {
+        return versions[stripe(new Key(tableName, partitionKey, rowKey))];
+    }
+
+    public void put(String tableName, TableEntity entity) {
+        put(tableName, entity, version(tableName, entity.getPartitionKey(), entity.getRowKey()));
+    }
+
+    /**
+     * Cache an entity read or written by a call started at the given version of its key.
+     */
+    public void put(String tableName, TableEntity entity, long version) {
+        store(new Key(tableName, entity.getPartitionKey(), entity.getRowKey()), entity, ttlMillis, version);
+    }
+
+    public void putNotFound(String tableName, String partitionKey, String rowKey) {
+        putNotFound(tableName, partitionKey, rowKey, version(tableName, partitionKey, rowKey));
+    }
+
+    /**
+     * Cache a missing entity, read or deleted by a call started at the given version of its key.
+     */
+    public void putNotFound(String tableName, String partitionKey, String rowKey, long version) {
+        store(new Key(tableName, partitionKey, rowKey), NOT_FOUND, negativeTtlMillis, version);
+    }
+
+    public synchronized void invalidate(String tableName, String partitionKey, String rowKey) {
+        Key key = new Key(tableName, partitionKey, rowKey);
+        versions[stripe(key)]++;
+        cache.invalidate(key);
+    }
+
+    public synchronized void invalidateTable(String tableName) {
+        bumpAll();
+        cache.invalidateIf(key -> key.tableName.equals(tableName));
+    }
+
+    public synchronized void clear() {
+        bumpAll();
+        cache.clear();
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    private synchronized void store(Key key, Object value, long ttl, long version) {
+        int stripe = stripe(key);
+        if (versions[stripe] == version && ttl > 0) {
+            cache.put(key, value, ttl);
+        } else {
+            cache.invalidate(key);
+        }
+        versions[stripe]++;
+    }
+
+    private void bumpAll() {
+        for (int i = 0; i < versions.length; i++) {
+            versions[i]++;
+        }
+    }
+
+    private static int stripe(Key key) {
+        return (key.hashCode() & 0x7fffffff) % VERSION_STRIPES;
+    }
+
+    private static long weigh(Object value) {
+        return value instanceof TableEntity
+                ? ENTRY_OVERHEAD + EntityUtils.estimateSize((TableEntity) value)
+                : ENTRY_OVERHEAD;
+    }
+
+    private static final class Key {
+        private final String tableName;
+        private final String partitionKey;
+        private final String rowKey;
+
+        Key(String tableName, String partitionKey, String rowKey) {
+            this.tableName = tableName;
+            this.partitionKey = partitionKey;
+            this.rowKey = rowKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return tableName.equals(key.tableName)
+                    && partitionKey.equals(key.partitionKey)
+                    && rowKey.equals(key.rowKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableName, partitionKey, rowKey);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package azure.component.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least recently used cache bounded by entry count and by total weight,
+ * with a time to live per entry.
+ */
+public class LruCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+
+    private final LinkedHashMap<K, CachedValue<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries maximum number of entries, 0 for no limit
+     * @param maxWeight  maximum total weight, 0 for no limit
+     * @param weigher    weight of a value, e.g. its estimated size in bytes
+     */
+    public LruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return cached value, or null if absent or expired
+     */
+    public synchronized V get(K key) {
+        CachedValue<V> cached = entries.get(key);
+        if (cached == null) {
+            missCount++;
+            return null;
+        }
+        if (cached.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return cached.value;
+    }
+
+    public synchronized void put(K key, V value, long ttlMillis) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (maxWeight > 0 && valueWeight > maxWeight) {
+            // Would evict everything else, do not cache it
+            remove(key);
+            return;
+        }
+
+        CachedValue<V> previous = entries.put(key, new CachedValue<>(value, valueWeight, System.currentTimeMillis() + ttlMillis));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += valueWeight;
+
+        evict();
+    }
+
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        Iterator<Map.Entry<K, CachedValue<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, CachedValue<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hitCount, missCount, evictionCount, entries.size(), weight);
+    }
+
+    private void remove(K key) {
+        CachedValue<V> removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedValue<V>> eldest = entries.values().iterator();
+        while (eldest.hasNext()
+                && ((maxEntries > 0 && entries.size() > maxEntries) || (maxWeight > 0 && weight > maxWeight))) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    private static final class CachedValue<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        CachedValue(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -4,9 +4,36 @@ public class Constants {
 
     public static final String AZURE_ACC_NAME = "AZURE_STORAGE_ACCOUNT_NAME";
     public static final String AZURE_ACC_KEY = "AZURE_STORAGE_ACCOUNT_KEY";
+    // Comma-separated blob containers to check/create when a blob service starts
+    public static final String AZURE_BLOB_CONTAINERS = "AZURE_STORAGE_BLOB_CONTAINERS";
     public static final String PARTITION_KEY = "PartitionKey";
     public static final String ROW_KEY = "RowKey";
+    public static final String ETAG_ANY = "*";
+    public static final String ROW_KEY_INDEX_SUFFIX = "RowKeyIndex";
+    public static final String PROPERTY_INDEX_SUFFIX = "PropertyIndex";
     public static final int MAX_QUERY_COUNT = 1000;
+    public static final int MAX_BATCH_SIZE = 100;
+    public static final long MAX_BATCH_PAYLOAD = 4 * 1024 * 1024 - 64 * 1024;
+    public static final int PAGE_INDEX_MAX_QUERIES = 256;
+    public static final int MAX_POINT_READS_PER_PARTITION = 4;
+    // A filter may hold up to 15 comparisons, one is taken by the PartitionKey
+    public static final int MAX_FILTER_ROW_KEYS = 14;
+    public static final long COUNT_CACHE_TTL_MILLIS = 60 * 1000;
+    public static final int SCAN_DEFAULT_RANGES = 16;
+    public static final int SCAN_QUEUE_CAPACITY = 4 * MAX_QUERY_COUNT;
+    public static final long SCAN_ABANDON_TIMEOUT_MILLIS = 60 * 1000;
+    public static final String SCAN_PROBE_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    public static final int RETRY_MAX_ATTEMPTS = 5;
+    public static final long RETRY_BASE_DELAY_MILLIS = 200;
+    public static final long RETRY_MAX_DELAY_MILLIS = 10 * 1000;
+    public static final int RATE_LIMIT_PARTITION_STRIPES = 64;
+    public static final int HEDGE_MAX_CONCURRENCY = 32;
+    public static final int BLOB_BLOCK_SIZE = 4 * 1024 * 1024;
+    public static final int BLOB_TRANSFER_PARALLELISM = 8;
+    public static final String OVERFLOW_CONTAINER_SUFFIX = "-overflow";
+    // Properties are limited to 64 KB and entities to 1 MB, counting two bytes per character
+    public static final int OVERFLOW_DEFAULT_THRESHOLD = 64 * 1024;
+    public static final long OVERFLOW_MAX_ENTITY_SIZE = 1024 * 1024 - 64 * 1024;
 
     public static final class RESPONSE_CODE {
         public static final int OK = 200;
@@ -14,6 +41,7 @@ public class Constants {
 
         public static final int NOT_FOUND = 404;
         public static final int CONFLICT = 409;
+        public static final int PRECONDITION_FAILED = 412;
 
         public static final int INTERNAL_SERVER_ERROR = 500;
     }
@@ -0,0 +1,52 @@
+package azure.component.filter;
+
+/**
+ * Comparison of a column with a typed literal.
+ */
+public final class Comparison extends Filter {
+
+    public enum Operator {
+        EQ("eq"), NE("ne"), GT("gt"), GE("ge"), LT("lt"), LE("le");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final String column;
+    private final Operator operator;
+    private final Object value;
+
+    Comparison(String column, Operator operator, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot compare " + column + " with null");
+        }
+        this.column = column;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public void render(StringBuilder builder) {
+        builder.append(column).append(' ').append(operator.getSymbol()).append(' ');
+        Literals.render(value, builder);
+    }
+}
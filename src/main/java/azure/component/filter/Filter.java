@@ -0,0 +1,140 @@
+package azure.component.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Typed Azure Table filter. Filters are immutable trees of comparisons joined
+ * by and/or/not, rendered to an OData filter string in a single pass.
+ *
+ * <pre>
+ * Filter filter = Filter.and(
+ *         Filter.eq("PartitionKey", "orders"),
+ *         Filter.range("Total", 100L, 1000L),
+ *         Filter.in("Status", "NEW", "PAID"));
+ * </pre>
+ */
+public abstract class Filter {
+
+    /**
+     * Append the OData form of this filter.
+     *
+     * @param builder builder receiving the filter
+     */
+    public abstract void render(StringBuilder builder);
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        render(builder);
+        return builder.toString();
+    }
+
+    public static Filter eq(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.EQ, value);
+    }
+
+    public static Filter ne(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.NE, value);
+    }
+
+    public static Filter gt(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.GT, value);
+    }
+
+    public static Filter ge(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.GE, value);
+    }
+
+    public static Filter lt(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.LT, value);
+    }
+
+    public static Filter le(String column, Object value) {
+        return new Comparison(column, Comparison.Operator.LE, value);
+    }
+
+    /**
+     * @param lower inclusive lower bound, or null for none
+     * @param upper exclusive upper bound, or null for none
+     * @return filter of the values in [lower, upper), or null if both bounds are null
+     */
+    public static Filter range(String column, Object lower, Object upper) {
+        return and(lower != null ? ge(column, lower) : null,
+                upper != null ? lt(column, upper) : null);
+    }
+
+    /**
+     * Range of the strings starting with a prefix, which is how key prefixes are queried.
+     */
+    public static Filter startsWith(String column, String prefix) {
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return ge(column, prefix);
+        }
+        return range(column, prefix, prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+    }
+
+    /**
+     * @return filter of the rows whose column equals one of the values
+     * @throws IllegalArgumentException if there is no value
+     */
+    public static Filter in(String column, Collection<?> values) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("IN needs at least one value");
+        }
+        List<Filter> filters = new ArrayList<>(values.size());
+        for (Object value : values) {
+            filters.add(eq(column, value));
+        }
+        return or(filters);
+    }
+
+    public static Filter in(String column, Object... values) {
+        return in(column, Arrays.asList(values));
+    }
+
+    /**
+     * Join filters with and, skipping null ones.
+     *
+     * @return joined filter, or null if every filter is null
+     */
+    public static Filter and(Filter... filters) {
+        return and(Arrays.asList(filters));
+    }
+
+    public static Filter and(Collection<Filter> filters) {
+        return Junction.of(Junction.Operator.AND, filters);
+    }
+
+    /**
+     * Join filters with or, skipping null ones.
+     *
+     * @return joined filter, or null if every filter is null
+     */
+    public static Filter or(Filter... filters) {
+        return or(Arrays.asList(filters));
+    }
+
+    public static Filter or(Collection<Filter> filters) {
+        return Junction.of(Junction.Operator.OR, filters);
+    }
+
+    public static Filter not(Filter filter) {
+        return new Not(filter);
+    }
+
+    /**
+     * Wrap a filter string written by hand, e.g. one received from a caller.
+     *
+     * @return filter, or null if the string is null or empty
+     */
+    public static Filter raw(String filter) {
+        return filter == null || filter.isEmpty() ? null : new Raw(filter);
+    }
+}
@@ -0,0 +1,73 @@
+package azure.component.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filters joined by and, or by or. Nested junctions of the same operator are flattened.
+ */
+public final class Junction extends Filter {
+
+    public enum Operator {
+        AND("and"), OR("or");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final Operator operator;
+    private final List<Filter> filters;
+
+    private Junction(Operator operator, List<Filter> filters) {
+        this.operator = operator;
+        this.filters = Collections.unmodifiableList(filters);
+    }
+
+    static Filter of(Operator operator, Collection<Filter> filters) {
+        List<Filter> flattened = new ArrayList<>(filters.size());
+        for (Filter filter : filters) {
+            if (filter instanceof Junction && ((Junction) filter).operator == operator) {
+                flattened.addAll(((Junction) filter).filters);
+            } else if (filter != null) {
+                flattened.add(filter);
+            }
+        }
+
+        if (flattened.isEmpty()) {
+            return null;
+        }
+        if (flattened.size() == 1) {
+            return flattened.get(0);
+        }
+        return new Junction(operator, flattened);
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public void render(StringBuilder builder) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (i > 0) {
+                builder.append(' ').append(operator.getSymbol()).append(' ');
+            }
+            builder.append('(');
+            filters.get(i).render(builder);
+            builder.append(')');
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package azure.component.filter;
+
+import java.util.Collections;
+import java.util.List;
+
+import static azure.component.constant.Constants.PARTITION_KEY;
+import static azure.component.constant.Constants.ROW_KEY;
+
+/**
+ * PartitionKey and RowKey bounds that every row matching a filter satisfies,
+ * taken from the comparisons on the keys joined by and at the top of the filter.
+ * Bounds are inclusive or exclusive as written; other predicates are ignored,
+ * so the rows within the bounds still need the whole filter.
+ */
+public final class KeyRange {
+
+    private String partitionKey;
+    private String partitionLower;
+    private boolean partitionLowerInclusive;
+    private String partitionUpper;
+    private boolean partitionUpperInclusive;
+    private String rowKey;
+    private boolean keysOnly = true;
+
+    private KeyRange() {
+    }
+
+    public static KeyRange of(Filter filter) {
+        KeyRange range = new KeyRange();
+        List<Filter> conjuncts = filter == null ? Collections.emptyList()
+                : filter instanceof Junction && ((Junction) filter).getOperator() == Junction.Operator.AND
+                ? ((Junction) filter).getFilters()
+                : Collections.singletonList(filter);
+
+        for (Filter conjunct : conjuncts) {
+            if (!range.add(conjunct)) {
+                range.keysOnly = false;
+            }
+        }
+        return range;
+    }
+
+    private boolean add(Filter filter) {
+        if (!(filter instanceof Comparison) || !(((Comparison) filter).getValue() instanceof String)) {
+            return false;
+        }
+        Comparison comparison = (Comparison) filter;
+        String value = (String) comparison.getValue();
+
+        if (ROW_KEY.equals(comparison.getColumn())) {
+            if (comparison.getOperator() == Comparison.Operator.EQ && rowKey == null) {
+                rowKey = value;
+                return true;
+            }
+            return false;
+        }
+        if (!PARTITION_KEY.equals(comparison.getColumn())) {
+            return false;
+        }
+
+        switch (comparison.getOperator()) {
+            case EQ:
+                partitionKey = value;
+                lower(value, true);
+                upper(value, true);
+                return true;
+            case GT:
+                lower(value, false);
+                return true;
+            case GE:
+                lower(value, true);
+                return true;
+            case LT:
+                upper(value, false);
+                return true;
+            case LE:
+                upper(value, true);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void lower(String value, boolean inclusive) {
+        int order = partitionLower == null ? 1 : value.compareTo(partitionLower);
+        if (order > 0 || (order == 0 && !inclusive)) {
+            partitionLower = value;
+            partitionLowerInclusive = inclusive;
+        }
+    }
+
+    private void upper(String value, boolean inclusive) {
+        int order = partitionUpper == null ? -1 : value.compareTo(partitionUpper);
+        if (order < 0 || (order == 0 && !inclusive)) {
+            partitionUpper = value;
+            partitionUpperInclusive = inclusive;
+        }
+    }
+
+    /**
+     * @return the single PartitionKey of the matching rows, or null if not fixed
+     */
+    public String getPartitionKey() {
+        return isSatisfiable() ? partitionKey : null;
+    }
+
+    /**
+     * @return lower PartitionKey bound, or null if none
+     */
+    public String getPartitionLower() {
+        return partitionLower;
+    }
+
+    public boolean isPartitionLowerInclusive() {
+        return partitionLowerInclusive;
+    }
+
+    /**
+     * @return upper PartitionKey bound, or null if none
+     */
+    public String getPartitionUpper() {
+        return partitionUpper;
+    }
+
+    public boolean isPartitionUpperInclusive() {
+        return partitionUpperInclusive;
+    }
+
+    /**
+     * @return the single RowKey of the matching rows, or null if not fixed
+     */
+    public String getRowKey() {
+        return rowKey;
+    }
+
+    /**
+     * @return true if the filter only fixes both keys, so that a point read answers it
+     */
+    public boolean isPointRead() {
+        return keysOnly && getPartitionKey() != null && rowKey != null;
+    }
+
+    /**
+     * @return true if a PartitionKey within the bounds may exist
+     */
+    public boolean isSatisfiable() {
+        if (partitionLower == null || partitionUpper == null) {
+            return true;
+        }
+        int order = partitionLower.compareTo(partitionUpper);
+        return order < 0 || (order == 0 && partitionLowerInclusive && partitionUpperInclusive);
+    }
+
+    /**
+     * @return true if the PartitionKey is within the bounds
+     */
+    public boolean containsPartition(String partitionKey) {
+        if (partitionLower != null) {
+            int order = partitionKey.compareTo(partitionLower);
+            if (order < 0 || (order == 0 && !partitionLowerInclusive)) {
+                return false;
+            }
+        }
+        if (partitionUpper != null) {
+            int order = partitionKey.compareTo(partitionUpper);
+            return order < 0 || (order == 0 && partitionUpperInclusive);
+        }
+        return true;
+    }
+}
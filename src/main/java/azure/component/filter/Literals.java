@@ -0,0 +1,60 @@
+package azure.component.filter;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * OData literals of the property types supported by Azure Table storage.
+ */
+class Literals {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    static void render(Object value, StringBuilder builder) {
+        if (value instanceof String) {
+            quote((String) value, builder);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            builder.append(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            builder.append((long) value).append('L');
+        } else if (value instanceof Double || value instanceof Float) {
+            builder.append(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            builder.append((boolean) value);
+        } else if (value instanceof Date) {
+            builder.append("datetime'");
+            DateTimeFormatter.ISO_INSTANT.formatTo(((Date) value).toInstant(), builder);
+            builder.append('\'');
+        } else if (value instanceof Instant) {
+            builder.append("datetime'");
+            DateTimeFormatter.ISO_INSTANT.formatTo((Instant) value, builder);
+            builder.append('\'');
+        } else if (value instanceof UUID) {
+            builder.append("guid'").append(value).append('\'');
+        } else if (value instanceof byte[]) {
+            builder.append("X'");
+            for (byte b : (byte[]) value) {
+                builder.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            builder.append('\'');
+        } else if (value instanceof Enum) {
+            quote(((Enum<?>) value).name(), builder);
+        } else {
+            throw new IllegalArgumentException("Unsupported filter value type: " + value.getClass().getName());
+        }
+    }
+
+    private static void quote(String value, StringBuilder builder) {
+        builder.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                builder.append('\'');
+            }
+            builder.append(c);
+        }
+        builder.append('\'');
+    }
+}
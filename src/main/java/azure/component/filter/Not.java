@@ -0,0 +1,24 @@
+package azure.component.filter;
+
+/**
+ * Negation of a filter.
+ */
+public final class Not extends Filter {
+
+    private final Filter filter;
+
+    Not(Filter filter) {
+        this.filter = filter;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public void render(StringBuilder builder) {
+        builder.append("not (");
+        filter.render(builder);
+        builder.append(')');
+    }
+}
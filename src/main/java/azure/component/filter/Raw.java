@@ -0,0 +1,18 @@
+package azure.component.filter;
+
+/**
+ * Filter string written by hand, rendered as is.
+ */
+public final class Raw extends Filter {
+
+    private final String filter;
+
+    Raw(String filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public void render(StringBuilder builder) {
+        builder.append(filter);
+    }
+}
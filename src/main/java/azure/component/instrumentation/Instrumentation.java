@@ -0,0 +1,31 @@
+package azure.component.instrumentation;
+
+/**
+ * Receives measurements of the storage operations of the services.
+ * Implementations must be thread-safe and cheap, they run on the hot path.
+ */
+public interface Instrumentation {
+
+    /**
+     * Start measuring a logical operation, e.g. one query through all its segments.
+     *
+     * @param resource     table or container name
+     * @param operation    operation name, e.g. "getEntity" or "queryPage"
+     * @param partitionKey partition of the operation, or null if it spans partitions
+     * @return recorder of the operation, closed when the operation ends
+     */
+    OperationRecorder start(String resource, String operation, String partitionKey);
+
+    /**
+     * Record a lookup in one of the caches of a service.
+     *
+     * @param resource table name
+     * @param cache    cache name, e.g. "query" or "count"
+     * @param hit      whether the cache held the value
+     */
+    void cacheAccess(String resource, String cache, boolean hit);
+
+    static Instrumentation noop() {
+        return NoopInstrumentation.INSTANCE;
+    }
+}
@@ -0,0 +1,134 @@
+package azure.component.instrumentation;
+
+import com.microsoft.azure.storage.StorageException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the measurements to a Micrometer registry, which needs micrometer-core
+ * on the classpath. Meters are tagged by resource and operation; PartitionKeys
+ * are not used as tags, since their number is unbounded.
+ *
+ * <ul>
+ * <li>azure.storage.operation: latency timer, tagged with the outcome (success or error class)</li>
+ * <li>azure.storage.round.trips: requests per operation</li>
+ * <li>azure.storage.entities: entities per operation</li>
+ * <li>azure.storage.bytes.received / azure.storage.bytes.sent: bytes per operation</li>
+ * <li>azure.storage.retries: retried requests</li>
+ * <li>azure.storage.cache: cache lookups, tagged with the cache and the result</li>
+ * </ul>
+ */
+public class MicrometerInstrumentation implements Instrumentation {
+
+    private final MeterRegistry registry;
+
+    public MicrometerInstrumentation(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public OperationRecorder start(String resource, String operation, String partitionKey) {
+        return new Recorder(resource, operation);
+    }
+
+    @Override
+    public void cacheAccess(String resource, String cache, boolean hit) {
+        Counter.builder("azure.storage.cache")
+                .tag("resource", resource)
+                .tag("cache", cache)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @return error class, with the HTTP status for storage errors
+     */
+    static String outcome(Throwable error) {
+        if (error == null) {
+            return "success";
+        }
+        if (error instanceof StorageException) {
+            return "StorageException:" + ((StorageException) error).getHttpStatusCode();
+        }
+        return error.getClass().getSimpleName();
+    }
+
+    private class Recorder implements OperationRecorder {
+        private final String resource;
+        private final String operation;
+        private final long startNanos = System.nanoTime();
+
+        private final AtomicInteger roundTrips = new AtomicInteger();
+        private final AtomicInteger entities = new AtomicInteger();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private volatile Throwable error;
+
+        Recorder(String resource, String operation) {
+            this.resource = resource;
+            this.operation = operation;
+        }
+
+        @Override
+        public void roundTrip(long responseBytes) {
+            roundTrips.incrementAndGet();
+            if (responseBytes > 0) {
+                bytesReceived.addAndGet(responseBytes);
+            }
+        }
+
+        @Override
+        public void bytesSent(long bytes) {
+            bytesSent.addAndGet(bytes);
+        }
+
+        @Override
+        public void entities(int count) {
+            entities.addAndGet(count);
+        }
+
+        @Override
+        public void retry() {
+            Counter.builder("azure.storage.retries")
+                    .tag("resource", resource)
+                    .tag("operation", operation)
+                    .register(registry)
+                    .increment();
+        }
+
+        @Override
+        public void error(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void close() {
+            Timer.builder("azure.storage.operation")
+                    .tag("resource", resource)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome(error))
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+            summary("azure.storage.round.trips").record(roundTrips.get());
+            summary("azure.storage.entities").record(entities.get());
+            summary("azure.storage.bytes.received").record(bytesReceived.get());
+            summary("azure.storage.bytes.sent").record(bytesSent.get());
+        }
+
+        private DistributionSummary summary(String name) {
+            return DistributionSummary.builder(name)
+                    .tag("resource", resource)
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+    }
+}
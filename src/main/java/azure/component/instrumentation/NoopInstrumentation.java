@@ -0,0 +1,47 @@
+package azure.component.instrumentation;
+
+/**
+ * Default instrumentation, recording nothing.
+ */
+final class NoopInstrumentation implements Instrumentation {
+
+    static final NoopInstrumentation INSTANCE = new NoopInstrumentation();
+
+    private static final OperationRecorder NOOP_RECORDER = new OperationRecorder() {
+        @Override
+        public void roundTrip(long responseBytes) {
+        }
+
+        @Override
+        public void bytesSent(long bytes) {
+        }
+
+        @Override
+        public void entities(int count) {
+        }
+
+        @Override
+        public void retry() {
+        }
+
+        @Override
+        public void error(Throwable error) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private NoopInstrumentation() {
+    }
+
+    @Override
+    public OperationRecorder start(String resource, String operation, String partitionKey) {
+        return NOOP_RECORDER;
+    }
+
+    @Override
+    public void cacheAccess(String resource, String cache, boolean hit) {
+    }
+}
@@ -0,0 +1,38 @@
+package azure.component.instrumentation;
+
+/**
+ * Measurements of one logical operation. Its latency runs from its start to {@link #close()}.
+ * Round trips may be recorded from several threads at the same time.
+ */
+public interface OperationRecorder extends AutoCloseable {
+
+    /**
+     * Record a request answered by the service.
+     *
+     * @param responseBytes length of the response body, -1 if unknown
+     */
+    void roundTrip(long responseBytes);
+
+    /**
+     * Record bytes sent to the service.
+     */
+    void bytesSent(long bytes);
+
+    /**
+     * Record entities returned to the caller.
+     */
+    void entities(int count);
+
+    /**
+     * Record a failed request that is retried.
+     */
+    void retry();
+
+    /**
+     * Record the failure of the operation.
+     */
+    void error(Throwable error);
+
+    @Override
+    void close();
+}
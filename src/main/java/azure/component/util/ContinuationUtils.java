@@ -0,0 +1,62 @@
+package azure.component.util;
+
+import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultContinuationType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class ContinuationUtils {
+
+    // Control characters are not allowed in PartitionKey/RowKey
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * Serialize a table continuation token into an opaque, URL-safe cursor.
+     *
+     * @param token continuation token, may be null
+     * @return cursor, or null when there is no continuation
+     */
+    public static String serialize(ResultContinuation token) {
+        if (token == null || token.getNextPartitionKey() == null) {
+            return null;
+        }
+
+        String rowKey = token.getNextRowKey() != null ? token.getNextRowKey() : "";
+        String raw = token.getNextPartitionKey() + SEPARATOR + rowKey;
+
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Restore a continuation token from a cursor created by {@link #serialize(ResultContinuation)}.
+     *
+     * @param cursor opaque cursor, may be null or empty
+     * @return continuation token, or null to start from the beginning
+     */
+    public static ResultContinuation deserialize(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        int separator = raw.indexOf(SEPARATOR);
+        String partitionKey = separator < 0 ? raw : raw.substring(0, separator);
+        String rowKey = separator < 0 ? "" : raw.substring(separator + 1);
+
+        ResultContinuation token = new ResultContinuation();
+        token.setContinuationType(ResultContinuationType.TABLE);
+        token.setNextPartitionKey(partitionKey);
+        token.setNextRowKey(rowKey.isEmpty() ? null : rowKey);
+
+        return token;
+    }
+}
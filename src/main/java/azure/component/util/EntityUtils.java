@@ -0,0 +1,133 @@
+package azure.component.util;
+
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.table.EdmType;
+import com.microsoft.azure.storage.table.EntityProperty;
+import com.microsoft.azure.storage.table.TableEntity;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class EntityUtils {
+
+    /**
+     * Rough serialized size of an entity, counting one byte per character.
+     *
+     * @param entity entity
+     * @return estimated size in bytes
+     */
+    public static long estimateSize(TableEntity entity) {
+        try {
+            return estimateSize(entity.writeEntity(new OperationContext()));
+        } catch (Exception ignored) {
+            return 0;
+        }
+    }
+
+    /**
+     * Rough serialized size of entity properties, counting one byte per character.
+     *
+     * @param properties properties by name
+     * @return estimated size in bytes
+     */
+    public static long estimateSize(Map<String, EntityProperty> properties) {
+        long size = 0;
+        for (Map.Entry<String, EntityProperty> property : properties.entrySet()) {
+            String value = property.getValue().getValueAsString();
+            size += property.getKey().length() * 2 + 32 + (value != null ? value.length() : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Copy an entity through its properties, so that the copy shares no mutable state with it.
+     *
+     * @param entity entity of a class with a no-argument constructor
+     * @return copy, or null if the entity cannot be copied
+     */
+    public static <T extends TableEntity> T copy(T entity) {
+        try {
+            OperationContext context = new OperationContext();
+            return copy(entity, entity.writeEntity(context), context);
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Create an entity of the same class and keys as the given one, with the given properties.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends TableEntity> T copy(T entity, HashMap<String, EntityProperty> properties,
+                                                 OperationContext context) throws Exception {
+        T copy = (T) entity.getClass().getDeclaredConstructor().newInstance();
+        copy.readEntity(properties, context);
+        copy.setPartitionKey(entity.getPartitionKey());
+        copy.setRowKey(entity.getRowKey());
+        copy.setEtag(entity.getEtag());
+        copy.setTimestamp(entity.getTimestamp());
+        return copy;
+    }
+
+    /**
+     * Convert a value to a typed entity property.
+     *
+     * @param value value
+     * @return property, or null if the type cannot be stored in a table
+     */
+    public static EntityProperty toEntityProperty(Object value) {
+        if (value instanceof String) {
+            return new EntityProperty((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return new EntityProperty(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            return new EntityProperty((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            return new EntityProperty(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            return new EntityProperty((Boolean) value);
+        } else if (value instanceof Date) {
+            return new EntityProperty((Date) value);
+        } else if (value instanceof UUID) {
+            return new EntityProperty((UUID) value);
+        } else if (value instanceof byte[]) {
+            return new EntityProperty((byte[]) value);
+        } else if (value instanceof Enum) {
+            return new EntityProperty(((Enum<?>) value).name());
+        }
+        return null;
+    }
+
+    /**
+     * Compare two non-null property values the way the Table service orders them:
+     * numbers by value, dates chronologically, everything else by its string form.
+     *
+     * @return negative, zero or positive as a is less than, equal to or greater than b
+     */
+    public static int compare(EntityProperty a, EntityProperty b) {
+        EdmType typeA = a.getEdmType();
+        EdmType typeB = b.getEdmType();
+
+        if (isNumeric(typeA) && isNumeric(typeB)) {
+            if (typeA == EdmType.DOUBLE || typeB == EdmType.DOUBLE) {
+                return Double.compare(a.getValueAsDouble(), b.getValueAsDouble());
+            }
+            return Long.compare(a.getValueAsLong(), b.getValueAsLong());
+        }
+        if (typeA == EdmType.DATE_TIME && typeB == EdmType.DATE_TIME) {
+            return a.getValueAsDate().compareTo(b.getValueAsDate());
+        }
+        if (typeA == EdmType.BOOLEAN && typeB == EdmType.BOOLEAN) {
+            return Boolean.compare(a.getValueAsBoolean(), b.getValueAsBoolean());
+        }
+        return a.getValueAsString().compareTo(b.getValueAsString());
+    }
+
+    private static boolean isNumeric(EdmType type) {
+        return type == EdmType.INT32 || type == EdmType.INT64 || type == EdmType.DOUBLE;
+    }
+}
@@ -0,0 +1,113 @@
+package azure.component.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorUtils {
+
+    private static final int DEFAULT_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final int DEFAULT_ASYNC_CONCURRENCY = 64;
+
+    private static volatile ExecutorService defaultExecutor;
+    private static volatile Executor asyncExecutor;
+    private static volatile ExecutorService scanExecutor;
+
+    /**
+     * Shared pool for storage I/O, created on first use. Its threads are daemons
+     * so that it never keeps the JVM alive.
+     */
+    public static ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (ExecutorUtils.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = Executors.newFixedThreadPool(DEFAULT_POOL_SIZE, daemonThreadFactory("azure-storage"));
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Shared pool of the parallel scans, created on first use. Scan workers wait for
+     * their consumer, so they get threads of their own, created as needed, instead of
+     * holding the threads of {@link #defaultExecutor()}.
+     */
+    public static ExecutorService scanExecutor() {
+        if (scanExecutor == null) {
+            synchronized (ExecutorUtils.class) {
+                if (scanExecutor == null) {
+                    scanExecutor = Executors.newCachedThreadPool(daemonThreadFactory("azure-storage-scan"));
+                }
+            }
+        }
+        return scanExecutor;
+    }
+
+    /**
+     * Shared executor of the asynchronous services, allowing
+     * {@code DEFAULT_ASYNC_CONCURRENCY} storage calls at a time.
+     */
+    public static Executor asyncExecutor() {
+        if (asyncExecutor == null) {
+            synchronized (ExecutorUtils.class) {
+                if (asyncExecutor == null) {
+                    asyncExecutor = newBoundedExecutor(DEFAULT_ASYNC_CONCURRENCY);
+                }
+            }
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Create an executor running at most maxConcurrency tasks at a time.
+     * On a runtime with virtual threads, every task gets its own virtual thread and
+     * waiting tasks do not hold a platform thread. Otherwise a fixed pool of
+     * maxConcurrency daemon threads is used.
+     *
+     * @param maxConcurrency maximum number of tasks running at the same time
+     * @return executor
+     */
+    public static Executor newBoundedExecutor(int maxConcurrency) {
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads == null) {
+            return Executors.newFixedThreadPool(maxConcurrency, daemonThreadFactory("azure-storage-async"));
+        }
+
+        Semaphore permits = new Semaphore(maxConcurrency);
+        return task -> virtualThreads.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * @return virtual-thread-per-task executor, or null if the runtime does not support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
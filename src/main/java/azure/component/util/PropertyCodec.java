@@ -0,0 +1,253 @@
+package azure.component.util;
+
+import azure.component.annotation.AzureCompressed;
+import com.microsoft.azure.storage.table.EdmType;
+import com.microsoft.azure.storage.table.EntityProperty;
+import util.ClassMetadata;
+import util.ClassMetadata.Property;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Packs the {@link AzureCompressed} properties of an entity into Deflate-compressed
+ * binary columns, one per group, and unpacks them. A group holds the name, type and
+ * binary value of each of its NOT NULL properties.
+ */
+public class PropertyCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte STRING = 1;
+    private static final byte INT32 = 2;
+    private static final byte INT64 = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DATE_TIME = 6;
+    private static final byte GUID = 7;
+    private static final byte BINARY = 8;
+
+    // Group column of each compressed column, per entity class
+    private static final ClassValue<Map<String, String>> GROUPS = new ClassValue<Map<String, String>>() {
+        @Override
+        protected Map<String, String> computeValue(Class<?> type) {
+            Map<String, String> groups = new HashMap<>();
+            for (Property property : ClassMetadata.of(type).getProperties()) {
+                AzureCompressed compressed = property.getField().getAnnotation(AzureCompressed.class);
+                if (compressed != null) {
+                    String group = compressed.group().trim();
+                    groups.put(property.getColumnName(), group.isEmpty() ? property.getColumnName() : group);
+                }
+            }
+            return Collections.unmodifiableMap(groups);
+        }
+    };
+
+    // Compressed properties by column, per entity class
+    private static final ClassValue<Map<String, Property>> PROPERTIES = new ClassValue<Map<String, Property>>() {
+        @Override
+        protected Map<String, Property> computeValue(Class<?> type) {
+            Map<String, Property> properties = new HashMap<>();
+            for (Property property : ClassMetadata.of(type).getProperties()) {
+                if (property.getField().isAnnotationPresent(AzureCompressed.class)) {
+                    properties.put(property.getColumnName(), property);
+                }
+            }
+            return Collections.unmodifiableMap(properties);
+        }
+    };
+
+    /**
+     * @return compressed property by column, for reading and writing the fields directly
+     */
+    public static Map<String, Property> propertiesOf(Class<?> entityClass) {
+        return PROPERTIES.get(entityClass);
+    }
+
+    /**
+     * @return group column by compressed column, empty if the class compresses nothing
+     */
+    public static Map<String, String> groupsOf(Class<?> entityClass) {
+        return GROUPS.get(entityClass);
+    }
+
+    /**
+     * Replace the compressed columns of written entity properties by their group columns, in place.
+     */
+    public static void encode(Class<?> entityClass, Map<String, EntityProperty> properties) {
+        Map<String, String> groups = groupsOf(entityClass);
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        Map<String, Map<String, EntityProperty>> grouped = new LinkedHashMap<>();
+        groups.forEach((column, group) -> {
+            if (properties.containsKey(column)) {
+                EntityProperty property = properties.remove(column);
+                Map<String, EntityProperty> members = grouped.computeIfAbsent(group, key -> new LinkedHashMap<>());
+                if (property != null && !property.getIsNull()) {
+                    members.put(column, property);
+                }
+            }
+        });
+
+        // Groups are written even when empty, so that a merge clears their previous values
+        grouped.forEach((group, members) -> properties.put(group, new EntityProperty(pack(members))));
+    }
+
+    /**
+     * Take the group columns out of read entity properties, in place.
+     * Columns of a group that are not binary, e.g. written before the property
+     * was compressed, are left to be read as usual.
+     *
+     * @return packed groups by group column
+     */
+    public static Map<String, byte[]> extract(Class<?> entityClass, Map<String, EntityProperty> properties) {
+        Map<String, String> groups = groupsOf(entityClass);
+        if (groups.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, byte[]> packed = new HashMap<>();
+        for (String group : groups.values()) {
+            EntityProperty property = properties.get(group);
+            if (property != null && property.getEdmType() == EdmType.BINARY && !property.getIsNull()) {
+                properties.remove(group);
+                packed.put(group, property.getValueAsByteArray());
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * @return properties of the given packed groups
+     */
+    public static HashMap<String, EntityProperty> decode(Collection<byte[]> packedGroups) {
+        HashMap<String, EntityProperty> properties = new HashMap<>();
+        for (byte[] packed : packedGroups) {
+            unpack(packed, properties);
+        }
+        return properties;
+    }
+
+    private static byte[] pack(Map<String, EntityProperty> members) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(packed))) {
+            out.writeByte(VERSION);
+            out.writeInt(members.size());
+            for (Map.Entry<String, EntityProperty> member : members.entrySet()) {
+                out.writeUTF(member.getKey());
+                writeValue(out, member.getValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return packed.toByteArray();
+    }
+
+    private static void unpack(byte[] packed, Map<String, EntityProperty> properties) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(packed)))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unknown compressed group version " + version);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String column = in.readUTF();
+                properties.put(column, readValue(in));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, EntityProperty property) throws IOException {
+        switch (property.getEdmType()) {
+            case INT32:
+                out.writeByte(INT32);
+                out.writeInt(property.getValueAsInteger());
+                break;
+            case INT64:
+                out.writeByte(INT64);
+                out.writeLong(property.getValueAsLong());
+                break;
+            case DOUBLE:
+                out.writeByte(DOUBLE);
+                out.writeDouble(property.getValueAsDouble());
+                break;
+            case BOOLEAN:
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(property.getValueAsBoolean());
+                break;
+            case DATE_TIME:
+                out.writeByte(DATE_TIME);
+                out.writeLong(property.getValueAsDate().getTime());
+                break;
+            case GUID:
+                UUID uuid = property.getValueAsUUID();
+                out.writeByte(GUID);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                break;
+            case BINARY:
+                writeBytes(out, BINARY, property.getValueAsByteArray());
+                break;
+            default:
+                writeBytes(out, STRING, property.getValueAsString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte type, byte[] bytes) throws IOException {
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static EntityProperty readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case STRING:
+                return new EntityProperty(new String(readBytes(in), StandardCharsets.UTF_8));
+            case INT32:
+                return new EntityProperty(in.readInt());
+            case INT64:
+                return new EntityProperty(in.readLong());
+            case DOUBLE:
+                return new EntityProperty(in.readDouble());
+            case BOOLEAN:
+                return new EntityProperty(in.readBoolean());
+            case DATE_TIME:
+                return new EntityProperty(new Date(in.readLong()));
+            case GUID:
+                return new EntityProperty(new UUID(in.readLong(), in.readLong()));
+            case BINARY:
+                return new EntityProperty(readBytes(in));
+            default:
+                throw new IllegalStateException("Unknown compressed property type " + type);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
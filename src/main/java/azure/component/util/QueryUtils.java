@@ -1,61 +1,48 @@
 package azure.component.util;
 
-import com.microsoft.azure.storage.table.TableQuery;
-
-import java.util.LinkedList;
-import java.util.List;
+import azure.component.filter.Filter;
 
 public class QueryUtils {
     public static String getEqualFilter(String columnName, String value) {
-        return TableQuery.generateFilterCondition(
-                columnName,
-                TableQuery.QueryComparisons.EQUAL,
-                value
-        );
+        return Filter.eq(columnName, value).toString();
     }
 
-    public static String combineFilters(String...filter) {
-        String combinedFilter;
-
-        filter = removeNull(filter);
-
-        if (filter.length == 0) {
-            return null;
-        }
-
-        if (filter.length == 1) {
-            return filter[0];
-        }
-
-        combinedFilter = TableQuery.combineFilters(
-                filter[0],
-                TableQuery.Operators.AND,
-                filter[1]
-        );
-
-        if (filter.length > 2) {
-            for (int i = 2; i < filter.length; i++) {
-                combinedFilter = TableQuery.combineFilters(
-                        combinedFilter,
-                        TableQuery.Operators.AND,
-                        filter[i]
-                );
-            }
-        }
-
-        return combinedFilter;
+    /**
+     * Equality filter with a literal of the value's type, e.g. {@code Age eq 42}
+     * for an Integer or {@code Id eq guid'...'} for a UUID.
+     *
+     * @param columnName Azure column
+     * @param value      String, number, Boolean, Date, UUID, byte[] or enum
+     * @return filter string
+     */
+    public static String getEqualFilter(String columnName, Object value) {
+        return Filter.eq(columnName, value).toString();
     }
 
-    private static String[] removeNull(String[] arr) {
-        List<String> list = new LinkedList<>();
-
-        for (String s : arr) {
-            if (s != null) {
-                list.add(s);
+    /**
+     * Join filters with and in a single builder, skipping null ones.
+     *
+     * @return joined filter, or null if every filter is null
+     */
+    public static String combineFilters(String... filter) {
+        StringBuilder builder = null;
+        String single = null;
+
+        for (String f : filter) {
+            if (f == null) {
+                continue;
+            }
+            if (single == null) {
+                single = f;
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(single.length() + f.length() + 16);
+                builder.append('(').append(single).append(')');
             }
+            builder.append(" and (").append(f).append(')');
         }
 
-        String[] newArr = new String[list.size()];
-        return list.toArray(newArr);
+        return builder != null ? builder.toString() : single;
     }
 }
@@ -0,0 +1,34 @@
+package azure.repository;
+
+import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncGenericRepository<T> {
+
+    CompletableFuture<Integer> insert(T model);
+
+    CompletableFuture<Integer> update(T model, String... properties);
+
+    CompletableFuture<Integer> updateWhole(T model);
+
+    CompletableFuture<Integer> remove(T model);
+
+    CompletableFuture<T> get(T model);
+
+    CompletableFuture<List<T>> getAll(T sampleModel);
+
+    CompletableFuture<Map<EntityKey, T>> getAll(Collection<T> keys);
+
+    CompletableFuture<List<T>> getAll(String partitionKey, String equalConditions);
+
+    CompletableFuture<List<T>> getAll(String partitionKey, String tableServiceQueryFilter, String... properties);
+
+    CompletableFuture<BootgridResponse<T>> getPage(int rowCount, int currentPage, String partitionKey, String tableServiceQueryFilter);
+
+    CompletableFuture<BootgridResponse<T>> getPage(int rowCount, String cursor, String partitionKey, String tableServiceQueryFilter);
+}
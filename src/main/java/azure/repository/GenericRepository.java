@@ -1,8 +1,12 @@
 package azure.repository;
 
 import azure.component.BootgridResponse;
+import azure.component.EntityKey;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface GenericRepository<T> {
 
@@ -18,7 +22,15 @@ public interface GenericRepository<T> {
 
     List<T> getAll(T sampleModel);
 
+    Map<EntityKey, T> getAll(Collection<T> keys);
+
     List<T> getAll(String partitionKey, String equalConditions);
 
+    List<T> getAll(String partitionKey, String tableServiceQueryFilter, String... properties);
+
+    Stream<T> stream(String partitionKey, String tableServiceQueryFilter);
+
     BootgridResponse<T> getPage(int rowCount, int currentPage, String partitionKey, String tableServiceQueryFilter);
+
+    BootgridResponse<T> getPage(int rowCount, String cursor, String partitionKey, String tableServiceQueryFilter);
 }
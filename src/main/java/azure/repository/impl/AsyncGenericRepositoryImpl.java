@@ -0,0 +1,91 @@
+package azure.repository.impl;
+
+import azure.component.BootgridResponse;
+import azure.component.EntityKey;
+import azure.component.util.ExecutorUtils;
+import azure.repository.AsyncGenericRepository;
+import azure.repository.GenericRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls of a {@link GenericRepository} on a bounded executor.
+ */
+public class AsyncGenericRepositoryImpl<M> implements AsyncGenericRepository<M> {
+
+    private final GenericRepository<M> repository;
+    private final Executor executor;
+
+    public AsyncGenericRepositoryImpl(GenericRepository<M> repository) {
+        this(repository, ExecutorUtils.asyncExecutor());
+    }
+
+    public AsyncGenericRepositoryImpl(GenericRepository<M> repository, Executor executor) {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Integer> insert(M model) {
+        return async(() -> repository.insert(model));
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(M model, String... properties) {
+        return async(() -> repository.update(model, properties));
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateWhole(M model) {
+        return async(() -> repository.updateWhole(model));
+    }
+
+    @Override
+    public CompletableFuture<Integer> remove(M model) {
+        return async(() -> repository.remove(model));
+    }
+
+    @Override
+    public CompletableFuture<M> get(M model) {
+        return async(() -> repository.get(model));
+    }
+
+    @Override
+    public CompletableFuture<List<M>> getAll(M sampleModel) {
+        return async(() -> repository.getAll(sampleModel));
+    }
+
+    @Override
+    public CompletableFuture<Map<EntityKey, M>> getAll(Collection<M> keys) {
+        return async(() -> repository.getAll(keys));
+    }
+
+    @Override
+    public CompletableFuture<List<M>> getAll(String partitionKey, String equalConditions) {
+        return async(() -> repository.getAll(partitionKey, equalConditions));
+    }
+
+    @Override
+    public CompletableFuture<List<M>> getAll(String partitionKey, String tableServiceQueryFilter, String... properties) {
+        return async(() -> repository.getAll(partitionKey, tableServiceQueryFilter, properties));
+    }
+
+    @Override
+    public CompletableFuture<BootgridResponse<M>> getPage(int rowCount, int currentPage, String partitionKey, String tableServiceQueryFilter) {
+        return async(() -> repository.getPage(rowCount, currentPage, partitionKey, tableServiceQueryFilter));
+    }
+
+    @Override
+    public CompletableFuture<BootgridResponse<M>> getPage(int rowCount, String cursor, String partitionKey, String tableServiceQueryFilter) {
+        return async(() -> repository.getPage(rowCount, cursor, partitionKey, tableServiceQueryFilter));
+    }
+
+    private <R> CompletableFuture<R> async(Supplier<R> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+}
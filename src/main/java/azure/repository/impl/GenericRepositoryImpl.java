@@ -1,34 +1,186 @@
 package azure.repository.impl;
 
+import azure.component.annotation.AzureIndexed;
+import azure.component.annotation.AzureOverflow;
 import azure.component.annotation.AzureTableName;
 import azure.repository.GenericRepository;
 import azure.component.BootgridResponse;
+import azure.component.EntityKey;
 import azure.component.GenericEntity;
 import azure.component.GenericModel;
+import azure.cloudservice.BlobService;
+import azure.cloudservice.TableService;
+import azure.cloudservice.impl.BlobServiceImpl;
+import azure.cloudservice.impl.CachingTableService;
+import azure.cloudservice.impl.InstrumentedTableService;
+import azure.cloudservice.impl.PropertyIndex;
 import azure.cloudservice.impl.TableServiceImpl;
-import azure.component.util.QueryUtils;
+import azure.component.cache.EntityCache;
+import azure.component.filter.Filter;
+import azure.component.instrumentation.Instrumentation;
+import azure.component.util.EntityUtils;
+import azure.component.util.PropertyCodec;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.blob.BlobContainerPublicAccessType;
+import com.microsoft.azure.storage.table.EntityProperty;
+import util.ClassMetadata;
+import util.ClassMetadata.Property;
 import util.GenericClassUtils;
-import util.StringUtils;
 
-import java.lang.reflect.Field;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static azure.component.constant.Constants.OVERFLOW_CONTAINER_SUFFIX;
+import static azure.component.constant.Constants.OVERFLOW_DEFAULT_THRESHOLD;
+import static azure.component.constant.Constants.OVERFLOW_MAX_ENTITY_SIZE;
+import static azure.component.constant.Constants.PARTITION_KEY;
 import static azure.component.constant.Constants.RESPONSE_CODE.*;
+import static azure.component.constant.Constants.ROW_KEY;
 
 public class GenericRepositoryImpl<M extends GenericModel<E>, E extends GenericEntity<M>> implements GenericRepository<M> {
 
-    private TableServiceImpl<E> tableService;
+    private TableServiceImpl<E> baseTableService;
+    private TableService<E> tableService;
+    private boolean optimisticConcurrency;
+    private EntityCache entityCache;
+    private Instrumentation instrumentation;
 
     private Class<M> modelClass;
+    private ClassMetadata modelMetadata;
+    private List<Property> indexedProperties;
+    private PropertyIndex propertyIndex;
+    private PropertyOverflow propertyOverflow;
     private Class<E> entityClass;
 
     public GenericRepositoryImpl() {
         this.modelClass = GenericClassUtils.getGenericClass(this.getClass(), 0);
+        this.modelMetadata = ClassMetadata.of(modelClass);
+        this.indexedProperties = modelMetadata.getProperties().stream()
+                .filter(property -> property.getField().isAnnotationPresent(AzureIndexed.class))
+                .collect(Collectors.toList());
         this.entityClass = GenericClassUtils.getGenericClass(this.getClass(), 1);
-        this.tableService = new TableServiceImpl<>(entityClass, getAzureTableName());
+        this.baseTableService = new TableServiceImpl<>(entityClass, getAzureTableName());
+        this.tableService = baseTableService;
+        if (!indexedProperties.isEmpty()) {
+            this.propertyIndex = baseTableService.createPropertyIndex();
+        }
+        if (modelMetadata.getProperties().stream().anyMatch(property -> property.getField().isAnnotationPresent(AzureOverflow.class))) {
+            BlobServiceImpl blobService = new BlobServiceImpl();
+            blobService.setContainerAccess(BlobContainerPublicAccessType.OFF);
+            setPropertyOverflow(blobService, getOverflowContainerName(), OVERFLOW_DEFAULT_THRESHOLD);
+        }
+    }
+
+    protected TableServiceImpl<E> getTableService() {
+        return baseTableService;
+    }
+
+    /**
+     * Serve point reads of this repository from the given cache.
+     *
+     * @param entityCache cache, possibly shared with other repositories, or null to disable caching
+     */
+    protected void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
+        buildTableService();
+    }
+
+    /**
+     * Record every table call of this repository, see {@link InstrumentedTableService}.
+     *
+     * @param instrumentation instrumentation, or null to stop recording
+     */
+    protected void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        baseTableService.setInstrumentation(instrumentation);
+        buildTableService();
+    }
+
+    private void buildTableService() {
+        TableService<E> service = baseTableService;
+        if (entityCache != null) {
+            service = new CachingTableService<>(service, entityCache, instrumentation);
+        }
+        if (instrumentation != null) {
+            service = new InstrumentedTableService<>(service, instrumentation);
+        }
+        this.tableService = service;
+    }
+
+    /**
+     * Serve repeated queries of this repository from a result cache,
+     * dropped per partition on every write through this repository.
+     * Covers the getAll queries; getPage and stream always read the table.
+     *
+     * @param maxEntries maximum number of cached queries, 0 for no limit
+     * @param maxRows    maximum number of cached rows over all queries, 0 for no limit
+     * @param ttlMillis  time to live of a cached result
+     */
+    protected void setQueryCache(int maxEntries, long maxRows, long ttlMillis) {
+        baseTableService.setQueryCache(maxEntries, maxRows, ttlMillis);
+    }
+
+    /**
+     * Store String properties larger than the threshold, or than the threshold of their
+     * {@link AzureOverflow} annotation, compressed in blob storage instead of the table.
+     * Properties are also moved, largest first, while an entity exceeds the size limit.
+     * Moved values are read back when an entity is turned into a model, since models are plain
+     * objects that cannot fetch a value on access: on get, in parallel for lists, and as they
+     * are consumed for streams.
+     *
+     * @param blobService   blob service storing the values, or null to stop moving values
+     * @param containerName container of the values, which should not have public access
+     * @param threshold     size in bytes above which values are moved, counting two bytes per character
+     */
+    protected void setPropertyOverflow(BlobService blobService, String containerName, int threshold) {
+        if (blobService == null) {
+            this.propertyOverflow = null;
+            return;
+        }
+
+        Map<String, Integer> columnThresholds = new HashMap<>();
+        for (Property property : modelMetadata.getProperties()) {
+            AzureOverflow overflow = property.getField().getAnnotation(AzureOverflow.class);
+            if (overflow != null) {
+                // 0 keeps the threshold of the repository
+                columnThresholds.put(property.getColumnName(), overflow.threshold() > 0 ? overflow.threshold() : threshold);
+            }
+        }
+        this.propertyOverflow = new PropertyOverflow(blobService, containerName, columnThresholds, threshold, OVERFLOW_MAX_ENTITY_SIZE);
+    }
 
+    private String getOverflowContainerName() {
+        // Container names are limited to 63 characters
+        String tableName = baseTableService.getTableName();
+        return tableName.substring(0, Math.min(tableName.length(), 63 - OVERFLOW_CONTAINER_SUFFIX.length())) + OVERFLOW_CONTAINER_SUFFIX;
+    }
+
+    /**
+     * Rely on Azure's conditional operations instead of checking existence first.
+     * This makes insert and remove conditional, each in a single round trip: insert
+     * answers CONFLICT if the entity exists, remove NOT_FOUND if it does not.
+     * <p>
+     * Updates stay last-writer-wins, since models do not carry the ETag of the entity
+     * they were read from. Only two cases are conditional: an update that has to read
+     * and rewrite the entity, e.g. to clear a property, replaces only the version it
+     * read; and a merge is conditional if {@code model.toEntity()} sets an ETag.
+     * Both answer PRECONDITION_FAILED if the entity changed in between.
+     *
+     * @param optimisticConcurrency whether to use conditional operations
+     */
+    protected void setOptimisticConcurrency(boolean optimisticConcurrency) {
+        this.optimisticConcurrency = optimisticConcurrency;
     }
 
     private String getAzureTableName() {
@@ -53,8 +205,23 @@ public class GenericRepositoryImpl<M extends GenericModel<E>, E extends GenericE
 
     @Override
     public int insert(M model) {
+        int status = insertEntity(model);
+        if (status == CREATED) {
+            Map<Property, Object> values = new LinkedHashMap<>();
+            indexedProperties.forEach(property -> values.put(property, property.get(model)));
+            index(model, values);
+        }
+        return status;
+    }
+
+    private int insertEntity(M model) {
+        if (optimisticConcurrency) {
+            // Azure rejects the insert with CONFLICT if the entity exists
+            return tableService.insert(toEntity(model));
+        }
+
         if (tableService.getEntity(model.getPartitionKey(), model.getRowKey()) == null) {
-            return tableService.insertOrReplace(model.toEntity())
+            return tableService.insertOrReplace(toEntity(model))
                     ? CREATED
                     : INTERNAL_SERVER_ERROR;
         } else {
@@ -62,56 +229,120 @@ public class GenericRepositoryImpl<M extends GenericModel<E>, E extends GenericE
         }
     }
 
+    /**
+     * Update the given properties with a single merge that only carries them.
+     * Setting a property to null needs the whole entity to be rewritten.
+     */
     @Override
     public int update(M model, String... properties) {
-        E currentEntity = tableService.getEntity(model.getPartitionKey(), model.getRowKey());
-
-        // Check existence
-        if (currentEntity != null) {
-            M currentModel = currentEntity.toModel();
-
-            // Set properties to model
-            for (String property : properties) {
-                try {
-                    Field field = modelClass.getDeclaredField(property);
-                    field.setAccessible(true);
-                    field.set(currentModel, field.get(model));
-                } catch (NoSuchFieldException | IllegalAccessException ignored) {
-                }
+        Map<Property, Object> values = new LinkedHashMap<>();
+        for (String name : properties) {
+            Property property = modelMetadata.getProperty(name);
+            if (property != null) {
+                values.put(property, property.get(model));
             }
+        }
 
-            return tableService.insertOrReplace(currentModel.toEntity())
-                    ? OK
-                    : INTERNAL_SERVER_ERROR;
-        } else {
-            return NOT_FOUND;
+        // A merge cannot remove a property
+        int status = values.containsValue(null)
+                ? rewrite(model, values)
+                : merge(model, values);
+        if (status == OK) {
+            index(model, values);
         }
+        return status;
     }
 
+    /**
+     * Update every NOT NULL property with a single merge.
+     */
     @Override
     public int updateWhole(M model) {
+        Map<Property, Object> values = new LinkedHashMap<>();
+        for (Property property : modelMetadata.getProperties()) {
+            Object fieldValue = property.get(model);
+            if (fieldValue != null) {
+                values.put(property, fieldValue);
+            }
+        }
+
+        int status = merge(model, values);
+        if (status == OK) {
+            index(model, values);
+        }
+        return status;
+    }
+
+    /**
+     * Add index entries for the new values of indexed properties. Entries of
+     * previous values are left behind and removed by the next lookup finding them.
+     */
+    private void index(M model, Map<Property, Object> values) {
+        if (propertyIndex == null) {
+            return;
+        }
+        for (Property property : indexedProperties) {
+            Object value = values.get(property);
+            if (value != null) {
+                propertyIndex.add(property.getColumnName(), value, model.getPartitionKey(), model.getRowKey());
+            }
+        }
+    }
+
+    /**
+     * Send only the given model properties to Azure. Values are taken from the entity
+     * conversion of the model so that they keep the entity's types. If a property has no
+     * matching entity column, the entity is read, modified and rewritten instead.
+     */
+    private int merge(M model, Map<Property, Object> values) {
+        E entity = null;
+        Map<String, EntityProperty> entityProperties = null;
+        try {
+            entity = model.toEntity();
+            entityProperties = entity.writeEntity(new OperationContext());
+        } catch (Exception ignored) {
+            // Partial model, use the raw field values
+        }
+
+        Map<String, EntityProperty> changes = new HashMap<>();
+        for (Map.Entry<Property, Object> value : values.entrySet()) {
+            String column = value.getKey().getColumnName();
+            if (column.equals(PARTITION_KEY) || column.equals(ROW_KEY)) {
+                continue;
+            }
+
+            EntityProperty property = entityProperties != null
+                    ? entityProperties.get(column)
+                    : EntityUtils.toEntityProperty(value.getValue());
+            if (property == null) {
+                return rewrite(model, values);
+            }
+            changes.put(column, property);
+        }
+
+        if (propertyOverflow != null) {
+            propertyOverflow.spill(changes);
+        }
+
+        // Unconditional unless the model's entity carries the ETag it was read with
+        String etag = optimisticConcurrency && entity != null ? entity.getEtag() : null;
+        return tableService.merge(model.getPartitionKey(), model.getRowKey(), etag, changes);
+    }
+
+    /**
+     * Read the entity, set the given properties on its model and write it back.
+     */
+    private int rewrite(M model, Map<Property, Object> values) {
         E currentEntity = tableService.getEntity(model.getPartitionKey(), model.getRowKey());
 
         // Check existence
         if (currentEntity != null) {
-            M currentModel = currentEntity.toModel();
+            M currentModel = toModel(currentEntity);
 
-            // Set properties to model - only properties that is NOT NULL
-            for (Field field : modelClass.getDeclaredFields()) {
-                try {
-                    field.setAccessible(true);
-                    Object fieldValue = field.get(model);
-                    if (fieldValue == null) {
-                        continue;
-                    }
-                    field.set(currentModel, fieldValue);
-                } catch (IllegalAccessException ignored) {
-                }
-            }
+            // Set properties to model
+            values.forEach((property, value) -> property.set(currentModel, value));
 
-            return tableService.insertOrReplace(currentModel.toEntity())
-                    ? OK
-                    : INTERNAL_SERVER_ERROR;
+            return save(currentEntity, currentModel);
         } else {
             return NOT_FOUND;
         }
@@ -119,6 +350,11 @@ public class GenericRepositoryImpl<M extends GenericModel<E>, E extends GenericE
 
     @Override
     public int remove(M model) {
+        if (optimisticConcurrency) {
+            // Azure answers NOT_FOUND if there is nothing to delete
+            return tableService.delete(model.getPartitionKey(), model.getRowKey(), null);
+        }
+
         E entity = tableService.getEntity(model.getPartitionKey(), model.getRowKey());
 
         // Check existence
@@ -131,6 +367,19 @@ public class GenericRepositoryImpl<M extends GenericModel<E>, E extends GenericE
         }
     }
 
+    private int save(E currentEntity, M currentModel) {
+        if (optimisticConcurrency) {
+            // Only replace the version that has been read
+            E entity = toEntity(currentModel);
+            entity.setEtag(currentEntity.getEtag());
+            return tableService.replace(entity);
+        }
+
+        return tableService.insertOrReplace(toEntity(currentModel))
+                ? OK
+                : INTERNAL_SERVER_ERROR;
+    }
+
     @Override
     public M get(M model) {
         E entity = null;
@@ -145,71 +394,327 @@ public class GenericRepositoryImpl<M extends GenericModel<E>, E extends GenericE
         }
 
         if (entity != null) {
-            return entity.toModel();
+            return toModel(entity);
         } else {
             return null;
         }
     }
 
+    /**
+     * Add every model of the table to the indexes of its {@link AzureIndexed} properties, then
+     * mark the indexes as built. Until then getAll(sampleModel) scans the table instead of
+     * using them, since models written before a property was indexed have no entries.
+     * Call it once after indexing a property, even on an empty table.
+     *
+     * @throws IllegalStateException if the table could not be read to the end
+     */
+    protected void rebuildPropertyIndex() {
+        if (propertyIndex == null) {
+            return;
+        }
+        try (Stream<E> entities = baseTableService.queryStream((String) null, null)) {
+            entities.forEach(entity -> {
+                M model = toModel(entity);
+                Map<Property, Object> values = new LinkedHashMap<>();
+                indexedProperties.forEach(property -> values.put(property, property.get(model)));
+                index(model, values);
+            });
+        }
+        indexedProperties.forEach(property -> propertyIndex.markBuilt(property.getColumnName()));
+    }
+
     @Override
     public List<M> getAll(M sampleModel) {
-        List<String> filters = new LinkedList<>();
+        // Prefer a built index over a scan
+        for (Property property : indexedProperties) {
+            Object value = property.get(sampleModel);
+            if (value != null && propertyIndex.isBuilt(property.getColumnName())) {
+                try {
+                    return getAllByIndex(sampleModel, property, value);
+                } catch (Exception e) {
+                    // Output the stack trace.
+                    e.printStackTrace();
+                    return new ArrayList<>();
+                }
+            }
+        }
+
+        List<Filter> filters = new ArrayList<>();
+        if (sampleModel.getPartitionKey() != null) {
+            filters.add(Filter.eq(PARTITION_KEY, sampleModel.getPartitionKey()));
+        }
+
+        // Compressed properties are only stored packed in their group, so they are compared after decoding
+        Map<String, String> compressedColumns = PropertyCodec.groupsOf(entityClass);
+        Map<Property, Object> decodedValues = new LinkedHashMap<>();
 
         // Set properties to model - only properties that is NOT NULL
-        for (Field field : modelClass.getDeclaredFields()) {
-            try {
-                field.setAccessible(true);
-
-                // Get Key and Value of property
-                Object fieldValue = field.get(sampleModel);
-                if (fieldValue == null) {
-                    continue;
-                }
-                String fieldName = StringUtils.capitalize(field.getName(), 0);
+        for (Property property : modelMetadata.getProperties()) {
+            // Get Key and Value of property
+            Object fieldValue = property.get(sampleModel);
+            if (fieldValue == null) {
+                continue;
+            }
+            if (compressedColumns.containsKey(property.getColumnName())) {
+                decodedValues.put(property, fieldValue);
+                continue;
+            }
 
-                // Add filter to list
-                filters.add(QueryUtils.getEqualFilter(fieldName, fieldValue + ""));
-            } catch (IllegalAccessException ignored) {
+            // Add filter to list, typed like the stored property
+            Object literal = EntityUtils.toEntityProperty(fieldValue) != null ? fieldValue : fieldValue.toString();
+            Filter filter = Filter.eq(property.getColumnName(), literal);
+            if (propertyOverflow != null && literal instanceof String) {
+                // A moved value is stored as its reference
+                filter = Filter.or(filter, Filter.eq(property.getColumnName(), propertyOverflow.referenceOf((String) literal)));
             }
+            filters.add(filter);
         }
 
-        // Combine filters
-        String[] f = new String[filters.size()];
-        String azureFilter = QueryUtils.combineFilters(filters.toArray(f));
-
         // Query from table service
-        List<E> entities = tableService.query(sampleModel.getPartitionKey(), azureFilter);
+        try {
+            List<M> models = toModels(tableService.query(Filter.and(filters)));
+            if (!decodedValues.isEmpty()) {
+                models.removeIf(model -> decodedValues.entrySet().stream()
+                        .anyMatch(sample -> !Objects.equals(sample.getKey().get(model), sample.getValue())));
+            }
+            return models;
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
 
-        if (entities != null) {
-            return entities.stream().map(E::toModel).collect(Collectors.toList());
-        } else {
-            return new LinkedList<>();
+    /**
+     * Find the models through the index of one property, then keep those
+     * matching every NOT NULL property of the sample. An entry is only removed
+     * once the table itself, not the entity cache, shows its entity missing or
+     * with another value.
+     *
+     * @throws IllegalStateException if the index or an entity could not be read
+     */
+    private List<M> getAllByIndex(M sampleModel, Property indexedProperty, Object value) {
+        String partitionKey = sampleModel.getPartitionKey();
+
+        List<EntityKey> candidates = propertyIndex.find(indexedProperty.getColumnName(), value).stream()
+                .filter(key -> partitionKey == null || partitionKey.equals(key.getPartitionKey()))
+                .collect(Collectors.toList());
+
+        Map<Property, Object> sampleValues = new LinkedHashMap<>();
+        for (Property property : modelMetadata.getProperties()) {
+            Object sampleValue = property.get(sampleModel);
+            if (sampleValue != null) {
+                sampleValues.put(property, sampleValue);
+            }
+        }
+
+        Map<EntityKey, M> current = readIndexed(candidates,
+                keys -> restoreAll(tableService.getEntities(keys)),
+                keys -> restoreAll(baseTableService.getEntities(keys)),
+                this::decode,
+                model -> Objects.equals(indexedProperty.get(model), value),
+                key -> propertyIndex.remove(indexedProperty.getColumnName(), value, key.getPartitionKey(), key.getRowKey()));
+        List<M> models = new ArrayList<>();
+
+        for (M model : current.values()) {
+            boolean matches = sampleValues.entrySet().stream()
+                    .allMatch(sample -> Objects.equals(sample.getKey().get(model), sample.getValue()));
+            if (matches) {
+                models.add(model);
+            }
         }
+
+        return models;
+    }
+
+    /**
+     * Read the entities of index entries and decode them. Entries whose entity is missing
+     * or has another value in the first read are read again, and only removed as stale
+     * if the second read agrees. Both reads fail rather than leave out entities they
+     * could not read, so an absent entity is missing.
+     *
+     * @param candidates  keys of the index entries
+     * @param read        read of the entities, possibly cached
+     * @param freshRead   uncached read of the entities
+     * @param decode      decoding of an entity, null if it cannot be decoded
+     * @param current     whether a model still has the indexed value
+     * @param removeStale removal of a stale entry
+     * @return models still having the indexed value, in candidate order
+     */
+    static <E, M> Map<EntityKey, M> readIndexed(List<EntityKey> candidates,
+                                               Function<List<EntityKey>, Map<EntityKey, E>> read,
+                                               Function<List<EntityKey>, Map<EntityKey, E>> freshRead,
+                                               Function<E, M> decode,
+                                               Predicate<M> current,
+                                               Consumer<EntityKey> removeStale) {
+        Map<EntityKey, E> entities = read.apply(candidates);
+        Map<EntityKey, M> models = new LinkedHashMap<>();
+        List<EntityKey> suspects = new ArrayList<>();
+
+        for (EntityKey key : candidates) {
+            E entity = entities.get(key);
+            M model = entity != null ? decode.apply(entity) : null;
+            if (entity == null || (model != null && !current.test(model))) {
+                suspects.add(key);
+            }
+            models.put(key, model);
+        }
+
+        if (!suspects.isEmpty()) {
+            Map<EntityKey, E> freshEntities = freshRead.apply(suspects);
+            for (EntityKey key : suspects) {
+                E entity = freshEntities.get(key);
+                M model = entity != null ? decode.apply(entity) : null;
+                if (entity == null || (model != null && !current.test(model))) {
+                    // Stale entry of a deleted entity or of a previous value
+                    removeStale.accept(key);
+                    model = null;
+                }
+                models.put(key, model);
+            }
+        }
+
+        models.values().removeIf(Objects::isNull);
+        return models;
+    }
+
+    /**
+     * Get the models with the keys of the given models.
+     *
+     * @param keys models holding at least their PartitionKey and RowKey
+     * @return found models by key
+     */
+    @Override
+    public Map<EntityKey, M> getAll(Collection<M> keys) {
+        List<EntityKey> entityKeys = keys.stream()
+                .map(model -> new EntityKey(model.getPartitionKey(), model.getRowKey()))
+                .collect(Collectors.toList());
+
+        Map<EntityKey, E> entities = restoreAll(tableService.getEntities(entityKeys));
+
+        Map<EntityKey, M> models = new LinkedHashMap<>();
+        entities.forEach((key, entity) -> models.put(key, decode(entity)));
+        return models;
     }
 
     @Override
     public List<M> getAll(String partitionKey, String equalConditions) {
-        List<E> entities = tableService.query(partitionKey, null);
-        if (entities != null) {
-            return entities.stream().map(E::toModel).collect(Collectors.toList());
-        } else {
-            return new LinkedList<>();
+        try {
+            return toModels(tableService.query(partitionKey, null));
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return new ArrayList<>();
         }
     }
 
+    /**
+     * Get the models matching a filter, only reading the given properties.
+     * The other properties of the returned models are left unset.
+     *
+     * @param properties model property names, or Azure column names, none to read every property
+     */
+    @Override
+    public List<M> getAll(String partitionKey, String tableServiceQueryFilter, String... properties) {
+        return toModels(tableService.query(partitionKey, tableServiceQueryFilter, toColumns(properties)));
+    }
+
+    private String[] toColumns(String[] properties) {
+        if (properties == null) {
+            return new String[0];
+        }
+        // Compressed properties are read through the column of their group
+        Map<String, String> groups = PropertyCodec.groupsOf(entityClass);
+        return Arrays.stream(properties)
+                .map(name -> {
+                    Property property = modelMetadata.getProperty(name);
+                    String column = property != null ? property.getColumnName() : name;
+                    return groups.getOrDefault(column, column);
+                })
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Lazily stream the models of a query. A read that fails once the stream
+     * has started fails the stream with an IllegalStateException.
+     */
+    @Override
+    public Stream<M> stream(String partitionKey, String tableServiceQueryFilter) {
+        return tableService.queryStream(partitionKey, tableServiceQueryFilter)
+                .map(this::toModel);
+    }
+
     @Override
     public BootgridResponse<M> getPage(int rowCount, int currentPage, String partitionKey, String tableServiceQueryFilter) {
         BootgridResponse<E> entities = tableService.queryPage(rowCount, currentPage, partitionKey, tableServiceQueryFilter);
+        return toModelPage(entities);
+    }
+
+    @Override
+    public BootgridResponse<M> getPage(int rowCount, String cursor, String partitionKey, String tableServiceQueryFilter) {
+        BootgridResponse<E> entities = tableService.queryPage(rowCount, cursor, partitionKey, tableServiceQueryFilter);
+        return toModelPage(entities);
+    }
+
+    private BootgridResponse<M> toModelPage(BootgridResponse<E> entities) {
         BootgridResponse<M> models = null;
         try {
             models = new BootgridResponse<>(
                     entities.getCurrent(),
                     entities.getRowCount(),
                     entities.getTotal(),
-                    entities.getRows().stream().map(E::toModel).collect(Collectors.toList())
+                    toModels(entities.getRows()),
+                    entities.getCursor()
             );
         } catch (Exception ignored) {
         }
         return models;
     }
+
+    private E toEntity(M model) {
+        E entity = model.toEntity();
+        if (propertyOverflow != null) {
+            propertyOverflow.spill(entity);
+        }
+        return entity;
+    }
+
+    private M toModel(E entity) {
+        if (propertyOverflow != null) {
+            entity = propertyOverflow.restore(entity);
+        }
+        return decode(entity);
+    }
+
+    private List<M> toModels(List<E> entities) {
+        if (propertyOverflow != null) {
+            entities = propertyOverflow.restoreAll(entities);
+        }
+        return entities.stream()
+                .map(this::decode)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the given entities, copies of them for those with moved values
+     */
+    private Map<EntityKey, E> restoreAll(Map<EntityKey, E> entities) {
+        if (propertyOverflow == null) {
+            return entities;
+        }
+        List<EntityKey> keys = new ArrayList<>(entities.keySet());
+        List<E> restored = propertyOverflow.restoreAll(new ArrayList<>(entities.values()));
+        Map<EntityKey, E> restoredEntities = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            restoredEntities.put(keys.get(i), restored.get(i));
+        }
+        return restoredEntities;
+    }
+
+    private M decode(E entity) {
+        // Compressed properties are only decoded for the entities turned into models
+        entity.decodeFields();
+        return entity.toModel();
+    }
 }
@@ -0,0 +1,298 @@
+package azure.repository.impl;
+
+import azure.cloudservice.BlobService;
+import azure.component.util.EntityUtils;
+import azure.component.util.ExecutorUtils;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.table.EdmType;
+import com.microsoft.azure.storage.table.EntityProperty;
+import com.microsoft.azure.storage.table.TableEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Moves large String properties of entities to blob storage. A moved value is
+ * Deflate-compressed into a blob named by the SHA-256 of the value, and the
+ * property only keeps a reference holding that checksum. Equal values share
+ * a blob; blobs of replaced or removed values are left in the container.
+ * Values are restored into copies, since read entities may be shared by the caches.
+ */
+class PropertyOverflow {
+
+    private static final String REFERENCE_PREFIX = "azure-overflow:sha256:";
+    private static final int PROPERTY_OVERHEAD = 32;
+
+    private final BlobService blobService;
+    private final String containerName;
+    // Thresholds of the annotated columns, other String columns use the default one
+    private final Map<String, Integer> columnThresholds;
+    private final int defaultThreshold;
+    private final long maxEntitySize;
+    private final Executor executor = ExecutorUtils.defaultExecutor();
+
+    PropertyOverflow(BlobService blobService, String containerName, Map<String, Integer> columnThresholds,
+                     int defaultThreshold, long maxEntitySize) {
+        this.blobService = blobService;
+        this.containerName = containerName;
+        this.columnThresholds = columnThresholds;
+        this.defaultThreshold = defaultThreshold;
+        this.maxEntitySize = maxEntitySize;
+    }
+
+    /**
+     * Move the large properties of an entity, in place.
+     */
+    void spill(TableEntity entity) {
+        try {
+            OperationContext context = new OperationContext();
+            HashMap<String, EntityProperty> properties = entity.writeEntity(context);
+            if (spill(properties)) {
+                entity.readEntity(properties, context);
+            }
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Move the String properties above their threshold, then the largest
+     * remaining ones while the properties exceed the entity size limit.
+     * A value that cannot be stored is kept as it is.
+     *
+     * @return whether a property has been replaced by a reference
+     */
+    boolean spill(Map<String, EntityProperty> properties) {
+        boolean changed = false;
+        for (Map.Entry<String, EntityProperty> property : properties.entrySet()) {
+            String value = stringValue(property.getValue());
+            int threshold = columnThresholds.getOrDefault(property.getKey(), defaultThreshold);
+            if (value != null && !isReference(value) && value.length() * 2L > threshold) {
+                changed |= replace(property);
+            }
+        }
+
+        while (estimateSize(properties) > maxEntitySize) {
+            Map.Entry<String, EntityProperty> largest = null;
+            for (Map.Entry<String, EntityProperty> property : properties.entrySet()) {
+                String value = stringValue(property.getValue());
+                if (value != null && !isReference(value)
+                        && (largest == null || value.length() > largest.getValue().getValueAsString().length())) {
+                    largest = property;
+                }
+            }
+            if (largest == null || !replace(largest)) {
+                break;
+            }
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Put back the values of the references of an entity.
+     *
+     * @return copy of the entity with the values, or the entity itself if it has no reference
+     */
+    <T extends TableEntity> T restore(T entity) {
+        try {
+            OperationContext context = new OperationContext();
+            HashMap<String, EntityProperty> properties = entity.writeEntity(context);
+            boolean changed = false;
+            for (Map.Entry<String, EntityProperty> property : properties.entrySet()) {
+                String value = stringValue(property.getValue());
+                if (value != null && isReference(value)) {
+                    String loaded = load(value);
+                    if (loaded != null) {
+                        property.setValue(new EntityProperty(loaded));
+                        changed = true;
+                    }
+                }
+            }
+            if (changed) {
+                return EntityUtils.copy(entity, properties, context);
+            }
+        } catch (Exception e) {
+            // Output the stack trace.
+            e.printStackTrace();
+        }
+        return entity;
+    }
+
+    /**
+     * Put back the values of the references of several entities,
+     * fetching the distinct blobs in parallel.
+     *
+     * @return entities in the same order, copied if they had a reference
+     */
+    <T extends TableEntity> List<T> restoreAll(List<T> entities) {
+        OperationContext context = new OperationContext();
+        Map<T, HashMap<String, EntityProperty>> referencing = new IdentityHashMap<>();
+        Map<String, CompletableFuture<String>> loads = new HashMap<>();
+
+        for (T entity : entities) {
+            try {
+                HashMap<String, EntityProperty> properties = entity.writeEntity(context);
+                for (EntityProperty property : properties.values()) {
+                    String value = stringValue(property);
+                    if (value != null && isReference(value)) {
+                        referencing.put(entity, properties);
+                        loads.computeIfAbsent(value, reference -> CompletableFuture.supplyAsync(() -> load(reference), executor));
+                    }
+                }
+            } catch (Exception e) {
+                // Output the stack trace.
+                e.printStackTrace();
+            }
+        }
+
+        List<T> restored = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            HashMap<String, EntityProperty> properties = referencing.get(entity);
+            if (properties == null) {
+                restored.add(entity);
+                continue;
+            }
+            try {
+                for (Map.Entry<String, EntityProperty> property : properties.entrySet()) {
+                    CompletableFuture<String> load = loads.get(stringValue(property.getValue()));
+                    String loaded = load != null ? load.join() : null;
+                    if (loaded != null) {
+                        property.setValue(new EntityProperty(loaded));
+                    }
+                }
+                restored.add(EntityUtils.copy(entity, properties, context));
+            } catch (Exception e) {
+                // Output the stack trace.
+                e.printStackTrace();
+                restored.add(entity);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * @return reference a value is stored as once moved, which only depends on the value
+     */
+    String referenceOf(String value) {
+        return REFERENCE_PREFIX + sha256(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean replace(Map.Entry<String, EntityProperty> property) {
+        String reference = store(property.getValue().getValueAsString());
+        if (reference == null) {
+            return false;
+        }
+        property.setValue(new EntityProperty(reference));
+        return true;
+    }
+
+    /**
+     * @return reference to the stored value, or null if it could not be stored
+     */
+    private String store(String value) {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        String checksum = sha256(raw);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(raw);
+        } catch (IOException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return null;
+        }
+
+        return blobService.upload(containerName, checksum, compressed.toByteArray()) != null
+                ? REFERENCE_PREFIX + checksum
+                : null;
+    }
+
+    /**
+     * @return referenced value, or null if it could not be read or does not match its checksum
+     */
+    private String load(String reference) {
+        String checksum = reference.substring(REFERENCE_PREFIX.length());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        if (blobService.download(containerName, checksum, compressed) < 0) {
+            return null;
+        }
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(compressed.size() * 4);
+        try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inflater.read(buffer)) >= 0) {
+                raw.write(buffer, 0, read);
+            }
+
+            byte[] bytes = raw.toByteArray();
+            if (!checksum.equals(sha256(bytes))) {
+                throw new IOException("Checksum mismatch of overflow blob " + checksum);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // Output the stack trace.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static boolean isReference(String value) {
+        return value.startsWith(REFERENCE_PREFIX);
+    }
+
+    private static String stringValue(EntityProperty property) {
+        return property != null && property.getEdmType() == EdmType.STRING && !property.getIsNull()
+                ? property.getValueAsString()
+                : null;
+    }
+
+    /**
+     * Serialized size of the properties, counting two bytes per character.
+     */
+    private static long estimateSize(Map<String, EntityProperty> properties) {
+        long size = 0;
+        for (Map.Entry<String, EntityProperty> property : properties.entrySet()) {
+            size += property.getKey().length() * 2L + PROPERTY_OVERHEAD;
+            EntityProperty value = property.getValue();
+            if (value.getIsNull()) {
+                continue;
+            }
+            if (value.getEdmType() == EdmType.BINARY) {
+                size += value.getValueAsByteArray().length;
+            } else {
+                size += value.getValueAsString().length() * 2L;
+            }
+        }
+        return size;
+    }
+
+    private static String sha256(byte[] raw) {
+        try {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(raw)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reflective information about the declared properties of a class, built once per class.
+ * Each property has its Azure column name and method handle based accessors, so that
+ * reading and writing properties needs no further reflection.
+ */
+public class ClassMetadata {
+
+    private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private final List<Property> properties;
+    private final Map<String, Property> propertiesByName;
+
+    private ClassMetadata(Class<?> type) {
+        List<Property> properties = new ArrayList<>();
+        Map<String, Property> propertiesByName = new HashMap<>();
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                Property property = new Property(field, lookup);
+                properties.add(property);
+                propertiesByName.put(property.getName(), property);
+            } catch (IllegalAccessException | RuntimeException ignored) {
+            }
+        }
+
+        this.properties = Collections.unmodifiableList(properties);
+        this.propertiesByName = propertiesByName;
+    }
+
+    public static ClassMetadata of(Class<?> type) {
+        return METADATA.get(type);
+    }
+
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @param name field name
+     * @return property, or null if the class declares no such field
+     */
+    public Property getProperty(String name) {
+        return propertiesByName.get(name);
+    }
+
+    public static class Property {
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final Field field;
+        private final String name;
+        private final String columnName;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Property(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            this.field = field;
+            this.name = field.getName();
+            this.columnName = StringUtils.capitalize(name, 0);
+            this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            this.setter = Modifier.isFinal(field.getModifiers())
+                    ? null
+                    : lookup.unreflectSetter(field).asType(SETTER_TYPE);
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return name of the matching Azure column, i.e. the capitalized property name
+         */
+        public String getColumnName() {
+            return columnName;
+        }
+
+        public Class<?> getType() {
+            return field.getType();
+        }
+
+        public Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot read " + name, e);
+            }
+        }
+
+        /**
+         * Set the property, ignoring values that do not fit it (e.g. null for a primitive).
+         *
+         * @return whether the value has been set
+         */
+        public boolean set(Object target, Object value) {
+            if (setter == null) {
+                return false;
+            }
+            try {
+                setter.invokeExact(target, value);
+                return true;
+            } catch (NullPointerException | ClassCastException e) {
+                return false;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot write " + name, e);
+            }
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package util;
 
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 
 public class GenericClassUtils {
+
+    // Type arguments of the generic superclass, resolved once per class
+    private static final ClassValue<Type[]> TYPE_ARGUMENTS = new ClassValue<Type[]>() {
+        @Override
+        protected Type[] computeValue(Class<?> type) {
+            return ((ParameterizedType) type.getGenericSuperclass()).getActualTypeArguments();
+        }
+    };
+
     public static <T> Class<T> getGenericClass(Class containerClass, int...indexes) {
         int index = indexes.length == 0 ? 0 : indexes[0];
-        return (Class)((ParameterizedType) containerClass.getGenericSuperclass())
-                .getActualTypeArguments()[index];
+        return (Class) TYPE_ARGUMENTS.get(containerClass)[index];
     }
 }
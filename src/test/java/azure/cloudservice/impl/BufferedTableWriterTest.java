@@ -0,0 +1,177 @@
+package azure.cloudservice.impl;
+
+import azure.cloudservice.TableService;
+import azure.component.BatchResult;
+import azure.component.GenericEntity;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static azure.component.constant.Constants.RESPONSE_CODE.CREATED;
+import static azure.component.constant.Constants.RESPONSE_CODE.INTERNAL_SERVER_ERROR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+public class BufferedTableWriterTest {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final List<Item> written = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean failing;
+
+    private BufferedTableWriter<Item> writer;
+
+    @After
+    public void closeWriter() {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TableService<Item> tableService() {
+        return (TableService<Item>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{TableService.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTableName":
+                            return "items";
+                        case "insertOrReplaceBatch":
+                        case "insertOrMergeBatch":
+                            calls.add(method.getName());
+                            BatchResult<Item> result = new BatchResult<>();
+                            for (Item item : (List<Item>) args[0]) {
+                                written.add(item);
+                                result.add(item, failing ? INTERNAL_SERVER_ERROR : CREATED, null);
+                            }
+                            return result;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static Item item(String partitionKey, String rowKey, String name, Integer count) {
+        Item item = new Item();
+        item.setPartitionKey(partitionKey);
+        item.setRowKey(rowKey);
+        item.setName(name);
+        item.setCount(count);
+        return item;
+    }
+
+    @Test
+    public void coalescesAMergeIntoThePendingReplace() throws InterruptedException {
+        writer = new BufferedTableWriter<>(tableService(), 100, 60_000);
+
+        writer.insertOrReplace(item("p", "1", "first", null));
+        writer.insertOrMerge(item("p", "1", null, 7));
+        assertEquals(1, writer.getPendingCount());
+
+        writer.flush();
+
+        assertEquals(Collections.singletonList("insertOrReplaceBatch"), calls);
+        assertEquals(1, written.size());
+        assertEquals("first", written.get(0).getName());
+        assertEquals(Integer.valueOf(7), written.get(0).getCount());
+    }
+
+    @Test
+    public void laterReplaceSupersedesThePendingWrite() throws InterruptedException {
+        writer = new BufferedTableWriter<>(tableService(), 100, 60_000);
+
+        writer.insertOrMerge(item("p", "1", "first", 1));
+        writer.insertOrReplace(item("p", "1", "second", null));
+        writer.flush();
+
+        assertEquals(Collections.singletonList("insertOrReplaceBatch"), calls);
+        assertEquals("second", written.get(0).getName());
+        assertEquals(null, written.get(0).getCount());
+    }
+
+    @Test
+    public void queuesACopyOfTheEntity() throws InterruptedException {
+        writer = new BufferedTableWriter<>(tableService(), 100, 60_000);
+
+        Item item = item("p", "1", "queued", null);
+        writer.insertOrReplace(item);
+        item.setName("modified");
+        writer.flush();
+
+        assertNotSame(item, written.get(0));
+        assertEquals("queued", written.get(0).getName());
+    }
+
+    @Test
+    public void closeDrainsEveryPartitionAndRejectsLaterWrites() throws InterruptedException {
+        writer = new BufferedTableWriter<>(tableService(), 100, 60_000);
+
+        writer.insertOrReplace(item("p1", "1", "a", null));
+        writer.insertOrReplace(item("p2", "1", "b", null));
+        writer.insertOrMerge(item("p3", "1", "c", null));
+        writer.close();
+
+        assertEquals(3, written.size());
+        assertEquals(0, writer.getPendingCount());
+        try {
+            writer.insertOrReplace(item("p1", "2", "d", null));
+            fail("Writes after close must be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void agedFlushesContinueAfterTheFailureHandlerThrows() throws InterruptedException {
+        writer = new BufferedTableWriter<>(tableService(), 100, 20);
+        writer.setFailureHandler(failure -> {
+            throw new IllegalStateException("handler failure");
+        });
+
+        failing = true;
+        writer.insertOrReplace(item("p", "1", "a", null));
+        awaitWritten(1);
+
+        failing = false;
+        writer.insertOrReplace(item("p", "2", "b", null));
+        awaitWritten(2);
+    }
+
+    private void awaitWritten(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (written.size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Only " + written.size() + " of " + count + " entities were written");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    public static class Item extends GenericEntity<Object> {
+        private String name;
+        private Integer count;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getCount() {
+            return count;
+        }
+
+        public void setCount(Integer count) {
+            this.count = count;
+        }
+
+        @Override
+        public Object toModel() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package azure.component;
+
+import azure.component.annotation.AzureCompressed;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.table.EntityProperty;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GenericEntityTest {
+
+    private static final OperationContext CONTEXT = new OperationContext();
+
+    private static <E extends GenericEntity<?>> E read(E entity, HashMap<String, EntityProperty> properties) throws StorageException {
+        // Reading takes the group columns out of the map
+        entity.readEntity(new HashMap<>(properties), CONTEXT);
+        return entity;
+    }
+
+    private static Record record() {
+        Record record = new Record();
+        record.setName("name");
+        record.setNotes("notes");
+        record.setScore(42);
+        record.setTitle("title");
+        record.setSize(7L);
+        return record;
+    }
+
+    private static void assertDecoded(Record record) {
+        assertEquals("name", record.getName());
+        assertEquals("notes", record.getNotes());
+        assertEquals(42, record.getScore());
+        assertEquals("title", record.getTitle());
+        assertEquals(7L, record.getSize());
+    }
+
+    @Test
+    public void packsCompressedMembersIntoTheirGroups() throws StorageException {
+        HashMap<String, EntityProperty> properties = record().writeEntity(CONTEXT);
+
+        assertTrue(properties.containsKey("Name"));
+        assertTrue(properties.containsKey("Notes"));
+        assertTrue(properties.containsKey("Score"));
+        assertTrue(properties.containsKey("Details"));
+        assertFalse(properties.containsKey("Title"));
+        assertFalse(properties.containsKey("Size"));
+    }
+
+    @Test
+    public void roundTripsStringAndPrimitiveMembers() throws StorageException {
+        Record record = read(new Record(), record().writeEntity(CONTEXT));
+
+        assertEquals("name", record.getName());
+        assertNull(record.getNotes());
+        assertEquals(0, record.getScore());
+
+        record.decodeFields();
+        assertDecoded(record);
+    }
+
+    @Test
+    public void writesUndecodedGroupsBackAsRead() throws StorageException {
+        HashMap<String, EntityProperty> written = record().writeEntity(CONTEXT);
+        HashMap<String, EntityProperty> rewritten = read(new Record(), written).writeEntity(CONTEXT);
+
+        for (String group : new String[]{"Notes", "Score", "Details"}) {
+            assertArrayEquals(written.get(group).getValueAsByteArray(), rewritten.get(group).getValueAsByteArray());
+        }
+        Record reread = read(new Record(), rewritten);
+        reread.decodeFields();
+        assertDecoded(reread);
+    }
+
+    @Test
+    public void keepsPrimitiveMembersSetBeforeDecoding() throws StorageException {
+        Record record = read(new Record(), record().writeEntity(CONTEXT));
+        record.setScore(5);
+        record.setSize(9L);
+
+        Record reread = read(new Record(), record.writeEntity(CONTEXT));
+        reread.decodeFields();
+
+        assertEquals("notes", reread.getNotes());
+        assertEquals(5, reread.getScore());
+        assertEquals("title", reread.getTitle());
+        assertEquals(9L, reread.getSize());
+    }
+
+    @Test
+    public void keepsStringMembersSetBeforeDecoding() throws StorageException {
+        Record record = read(new Record(), record().writeEntity(CONTEXT));
+        record.setNotes("changed");
+        record.setTitle("other");
+        record.decodeFields();
+
+        assertEquals("changed", record.getNotes());
+        assertEquals(42, record.getScore());
+        assertEquals("other", record.getTitle());
+        assertEquals(7L, record.getSize());
+    }
+
+    @Test
+    public void gettersMayDecodeOnFirstAccess() throws StorageException {
+        LazyRecord lazy = new LazyRecord();
+        lazy.setNotes("notes");
+        lazy.setScore(3);
+
+        LazyRecord reread = read(new LazyRecord(), lazy.writeEntity(CONTEXT));
+        HashMap<String, EntityProperty> rewritten = reread.writeEntity(CONTEXT);
+        assertArrayEquals(lazy.writeEntity(CONTEXT).get("Notes").getValueAsByteArray(),
+                rewritten.get("Notes").getValueAsByteArray());
+
+        assertEquals("notes", reread.getNotes());
+        assertEquals(3, reread.getScore());
+    }
+
+    public static class Record extends GenericEntity<Object> {
+        private String name;
+        @AzureCompressed
+        private String notes;
+        @AzureCompressed
+        private int score;
+        @AzureCompressed(group = "Details")
+        private String title;
+        @AzureCompressed(group = "Details")
+        private long size;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getNotes() {
+            return notes;
+        }
+
+        public void setNotes(String notes) {
+            this.notes = notes;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public void setScore(int score) {
+            this.score = score;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public Object toModel() {
+            return null;
+        }
+    }
+
+    public static class LazyRecord extends GenericEntity<Object> {
+        @AzureCompressed(group = "Notes")
+        private String notes;
+        @AzureCompressed(group = "Notes")
+        private int score;
+
+        public String getNotes() {
+            decodeFields();
+            return notes;
+        }
+
+        public void setNotes(String notes) {
+            this.notes = notes;
+        }
+
+        public int getScore() {
+            decodeFields();
+            return score;
+        }
+
+        public void setScore(int score) {
+            this.score = score;
+        }
+
+        @Override
+        public Object toModel() {
+            return null;
+        }
+    }
+}
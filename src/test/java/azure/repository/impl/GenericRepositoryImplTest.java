@@ -0,0 +1,96 @@
+package azure.repository.impl;
+
+import azure.component.EntityKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GenericRepositoryImplTest {
+
+    private static final EntityKey FIRST = new EntityKey("p", "1");
+    private static final EntityKey SECOND = new EntityKey("p", "2");
+    private static final EntityKey THIRD = new EntityKey("p", "3");
+
+    private final List<EntityKey> removed = new ArrayList<>();
+    private final List<List<EntityKey>> freshReads = new ArrayList<>();
+
+    private Map<EntityKey, String> readIndexed(Map<EntityKey, String> cached, Map<EntityKey, String> table) {
+        Function<List<EntityKey>, Map<EntityKey, String>> freshRead = keys -> {
+            freshReads.add(keys);
+            return select(table, keys);
+        };
+        return GenericRepositoryImpl.readIndexed(Arrays.asList(FIRST, SECOND, THIRD),
+                keys -> select(cached, keys),
+                freshRead,
+                Function.identity(),
+                "red"::equals,
+                removed::add);
+    }
+
+    private static Map<EntityKey, String> select(Map<EntityKey, String> entities, List<EntityKey> keys) {
+        Map<EntityKey, String> selected = new HashMap<>();
+        for (EntityKey key : keys) {
+            if (entities.containsKey(key)) {
+                selected.put(key, entities.get(key));
+            }
+        }
+        return selected;
+    }
+
+    @Test
+    public void keepsEntriesTheCacheReportsStaleButTheTableDoesNot() {
+        Map<EntityKey, String> cached = new HashMap<>();
+        cached.put(FIRST, "red");
+        cached.put(SECOND, "blue");
+
+        Map<EntityKey, String> table = new HashMap<>();
+        table.put(FIRST, "red");
+        table.put(SECOND, "red");
+        table.put(THIRD, "red");
+
+        Map<EntityKey, String> models = readIndexed(cached, table);
+
+        assertEquals(Arrays.asList(FIRST, SECOND, THIRD), new ArrayList<>(models.keySet()));
+        assertTrue(removed.isEmpty());
+        assertEquals(Collections.singletonList(Arrays.asList(SECOND, THIRD)), freshReads);
+    }
+
+    @Test
+    public void removesEntriesTheTableConfirmsStale() {
+        Map<EntityKey, String> cached = new HashMap<>();
+        cached.put(FIRST, "red");
+        cached.put(SECOND, "blue");
+
+        Map<EntityKey, String> table = new HashMap<>();
+        table.put(FIRST, "red");
+        table.put(SECOND, "blue");
+
+        Map<EntityKey, String> models = readIndexed(cached, table);
+
+        assertEquals(Collections.singletonList(FIRST), new ArrayList<>(models.keySet()));
+        assertEquals(Arrays.asList(SECOND, THIRD), removed);
+    }
+
+    @Test
+    public void skipsTheFreshReadWhenNothingLooksStale() {
+        Map<EntityKey, String> table = new HashMap<>();
+        table.put(FIRST, "red");
+        table.put(SECOND, "red");
+        table.put(THIRD, "red");
+
+        Map<EntityKey, String> models = readIndexed(table, table);
+
+        assertEquals(3, models.size());
+        assertTrue(removed.isEmpty());
+        assertTrue(freshReads.isEmpty());
+    }
+}
@@ -0,0 +1,209 @@
+package azure.repository.impl;
+
+import azure.cloudservice.BlobService;
+import com.microsoft.azure.storage.table.TableServiceEntity;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyOverflowTest {
+
+    private static final String CONTAINER = "documents-overflow";
+
+    private final MemoryBlobService blobService = new MemoryBlobService();
+
+    private PropertyOverflow overflow(int threshold, long maxEntitySize) {
+        return new PropertyOverflow(blobService, CONTAINER, Collections.emptyMap(), threshold, maxEntitySize);
+    }
+
+    private static Document document(String rowKey, String title, String body) {
+        Document document = new Document();
+        document.setPartitionKey("p");
+        document.setRowKey(rowKey);
+        document.setTitle(title);
+        document.setBody(body);
+        return document;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void spillsValuesAboveTheThresholdAndRestoresThem() {
+        PropertyOverflow overflow = overflow(1000, Long.MAX_VALUE);
+        String body = repeat('a', 10_000);
+        Document document = document("1", "title", body);
+
+        overflow.spill(document);
+
+        assertEquals("title", document.getTitle());
+        assertEquals(overflow.referenceOf(body), document.getBody());
+        assertEquals(1, blobService.blobs.size());
+
+        Document restored = overflow.restore(document);
+
+        assertNotSame(document, restored);
+        assertEquals(body, restored.getBody());
+        assertEquals("title", restored.getTitle());
+        assertEquals("1", restored.getRowKey());
+        // The read entity, possibly cached, keeps its reference
+        assertEquals(overflow.referenceOf(body), document.getBody());
+    }
+
+    @Test
+    public void equalValuesShareABlob() {
+        PropertyOverflow overflow = overflow(1000, Long.MAX_VALUE);
+        String body = repeat('b', 5_000);
+
+        overflow.spill(document("1", "first", body));
+        overflow.spill(document("2", "second", body));
+
+        assertEquals(1, blobService.blobs.size());
+    }
+
+    @Test
+    public void spillsTheLargestValuesWhileTheEntityIsTooLarge() {
+        PropertyOverflow overflow = overflow(Integer.MAX_VALUE, 3_000);
+        String title = repeat('t', 500);
+        String body = repeat('b', 2_000);
+        Document document = document("1", title, body);
+
+        overflow.spill(document);
+
+        assertEquals(title, document.getTitle());
+        assertEquals(overflow.referenceOf(body), document.getBody());
+    }
+
+    @Test
+    public void restoreAllKeepsOrderAndEntitiesWithoutReferences() {
+        PropertyOverflow overflow = overflow(1000, Long.MAX_VALUE);
+        Document small = document("1", "small", "body");
+        Document first = document("2", "first", repeat('x', 4_000));
+        Document second = document("3", "second", repeat('y', 4_000));
+        overflow.spill(first);
+        overflow.spill(second);
+
+        List<Document> restored = overflow.restoreAll(Arrays.asList(small, first, second));
+
+        assertSame(small, restored.get(0));
+        assertEquals(repeat('x', 4_000), restored.get(1).getBody());
+        assertEquals(repeat('y', 4_000), restored.get(2).getBody());
+        assertEquals(2, blobService.downloads.get());
+    }
+
+    @Test
+    public void keepsTheReferenceOfACorruptedBlob() {
+        PropertyOverflow overflow = overflow(1000, Long.MAX_VALUE);
+        String body = repeat('c', 4_000);
+        Document document = document("1", "title", body);
+        overflow.spill(document);
+
+        String blobName = blobService.blobs.keySet().iterator().next();
+        String other = repeat('d', 4_000);
+        Document replacement = document("2", "title", other);
+        overflow.spill(replacement);
+        blobService.blobs.put(blobName, blobService.blobs.get(blobService.otherThan(blobName)));
+
+        Document restored = overflow.restore(document);
+
+        assertSame(document, restored);
+        assertNotEquals(body, restored.getBody());
+        assertTrue(restored.getBody().startsWith("azure-overflow:"));
+    }
+
+    public static class Document extends TableServiceEntity {
+        private String title;
+        private String body;
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public void setBody(String body) {
+            this.body = body;
+        }
+    }
+
+    private static class MemoryBlobService implements BlobService {
+        private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+        private final AtomicInteger downloads = new AtomicInteger();
+
+        String otherThan(String blobName) {
+            return blobs.keySet().stream().filter(name -> !name.equals(blobName)).findFirst().orElse(blobName);
+        }
+
+        @Override
+        public String upload(String containerName, String blobName, byte[] data) {
+            blobs.put(blobName, data.clone());
+            return "memory://" + containerName + "/" + blobName;
+        }
+
+        @Override
+        public long download(String containerName, String blobName, OutputStream target) {
+            downloads.incrementAndGet();
+            byte[] data = blobs.get(blobName);
+            if (data == null) {
+                return -1;
+            }
+            try {
+                target.write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return data.length;
+        }
+
+        @Override
+        public String upload(String containerName, String blobName, InputStream data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String upload(String containerName, String blobName, ReadableByteChannel data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String upload(String containerName, String blobName, Path file) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream openDownload(String containerName, String blobName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long download(String containerName, String blobName, Path target) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}